@@ -0,0 +1,120 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.clustering;
+
+import jdk.jfr.*;
+
+/**
+ * The Flight Recorder events behind FlightRecorderEvents. No event, and no
+ * sweep report, is built unless a recording has enabled its type.
+ */
+final class JfrEvents extends FlightRecorderEvents {
+	private static final EventType SWEEP = EventType.getEventType(SweepEvent.class);
+	private static final EventType LAYER = EventType.getEventType(LayerEvent.class);
+
+	boolean sweepsEnabled() {
+		return SWEEP.isEnabled();
+	}
+
+	public void sweepDone(SweepReport report) {
+		if (!SWEEP.isEnabled())
+			return;
+		SweepEvent event = new SweepEvent();
+		if (event.shouldCommit()) {
+			event.layer = report.layer();
+			event.sweep = report.sweep();
+			event.moves = report.moves();
+			event.activeNodes = report.activeNodes();
+			event.modularity = report.modularity();
+			event.elapsed = report.nanos();
+			event.commit();
+		}
+	}
+
+	public void layerDone(LayerReport report) {
+		if (!LAYER.isEnabled())
+			return;
+		LayerEvent event = new LayerEvent();
+		if (event.shouldCommit()) {
+			event.layer = report.layer();
+			event.order = report.order();
+			event.numEdges = report.numEdges();
+			event.sweeps = report.sweeps();
+			event.moves = report.moves();
+			event.modularity = report.modularity();
+			event.stopReason = report.stopReason().name();
+			event.moving = report.movingNanos();
+			event.coarsening = report.coarseningNanos();
+			event.usedHeap = report.usedHeap();
+			event.commit();
+		}
+	}
+
+	@Name("louvain.Sweep")
+	@Label("Louvain Sweep")
+	@Category("Louvain")
+	static class SweepEvent extends Event {
+		@Label("Layer")
+		int layer;
+		@Label("Sweep")
+		int sweep;
+		@Label("Moves")
+		int moves;
+		@Label("Active Nodes")
+		int activeNodes;
+		@Label("Modularity")
+		double modularity;
+		@Label("Elapsed")
+		@Timespan
+		long elapsed;
+	}
+
+	@Name("louvain.Layer")
+	@Label("Louvain Layer")
+	@Category("Louvain")
+	static class LayerEvent extends Event {
+		@Label("Layer")
+		int layer;
+		@Label("Order")
+		int order;
+		@Label("Edges")
+		long numEdges;
+		@Label("Sweeps")
+		int sweeps;
+		@Label("Moves")
+		int moves;
+		@Label("Modularity")
+		double modularity;
+		@Label("Stop Reason")
+		String stopReason;
+		@Label("Local Moving")
+		@Timespan
+		long moving;
+		@Label("Coarsening")
+		@Timespan
+		long coarsening;
+		@Label("Heap Used")
+		@DataAmount
+		long usedHeap;
+	}
+}
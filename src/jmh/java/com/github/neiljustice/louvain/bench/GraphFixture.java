@@ -0,0 +1,82 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.bench;
+
+import com.github.neiljustice.louvain.clustering.LouvainDetector;
+import com.github.neiljustice.louvain.graph.*;
+import java.io.*;
+import java.nio.file.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The graphs benchmarks run on: the test graphs, or an Erdos-Renyi graph of
+ * the given order and mean degree, generated from a fixed seed so that runs
+ * compare like with like. Each is partitioned by one Louvain run, so that
+ * moves and coarse-graining act on realistic communities.
+ */
+@State(Scope.Benchmark)
+public class GraphFixture {
+	private static final long SEED = 1;
+
+	@Param({ "30-cliques.csv", "connected-caveman-graph.csv", "arxiv.txt", "generated" })
+	public String graph;
+
+	@Param({ "10000" })
+	public int nodes; // order of the generated graph
+
+	@Param({ "10" })
+	public int degree; // mean degree of the generated graph
+
+	public Graph g;
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void load() throws IOException {
+		g = load(graph, nodes, degree);
+		g.loadPartitioning(new LouvainDetector(g, 1).run().get(0));
+	}
+
+	public static Graph load(String graph, int nodes, int degree) throws IOException {
+		if (graph.equals("generated"))
+			return new GraphGenerator(SEED).erdosRenyi(nodes, (double) degree / nodes).graph();
+		Path file = Files.createTempFile("fixture", graph);
+		try (InputStream in = GraphFixture.class.getResourceAsStream("/graphs/" + graph)) {
+			if (in == null)
+				throw new FileNotFoundException(graph);
+			Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+			return new EdgeListLoader().load(file);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	// cycles through the nodes, skipping any without neighbours
+	public int nextNode() {
+		for (int i = 0; i < g.order(); i++) {
+			next = next + 1 == g.order() ? 0 : next + 1;
+			if (g.numNeighbours(next) > 0)
+				return next;
+		}
+		return next;
+	}
+}
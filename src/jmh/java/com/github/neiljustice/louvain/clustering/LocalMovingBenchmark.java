@@ -0,0 +1,83 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.clustering;
+
+import com.github.neiljustice.louvain.bench.GraphFixture;
+import com.github.neiljustice.louvain.graph.Graph;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The per-node work of a local moving sweep: scoring the neighbouring
+ * communities (the body of Maximiser.makeBestMove), moving a node and back,
+ * and the weight between a node and a community.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalMovingBenchmark {
+
+	@State(Scope.Thread)
+	public static class Moves extends GraphFixture {
+		MoveEvaluator evaluator;
+
+		@Setup(Level.Trial)
+		public void evaluator() {
+			evaluator = new MoveEvaluator(g.partitioning());
+		}
+
+		// the community of a neighbour other than node, or node's own
+		int neighbourCommunity(int node) {
+			Graph.Partitioning p = g.partitioning();
+			for (long i = g.neighbourStart(node); i < g.neighbourEnd(node); i++) {
+				int comm = p.community(g.neighbour(i));
+				if (comm != p.community(node))
+					return comm;
+			}
+			return p.community(node);
+		}
+	}
+
+	@Benchmark
+	public int bestCommunity(Moves s) {
+		return s.evaluator.bestCommunity(s.nextNode());
+	}
+
+	@Benchmark
+	public double moveToComm(Moves s) {
+		Graph.Partitioning p = s.g.partitioning();
+		int node = s.nextNode();
+		int comm = p.community(node);
+		p.moveToComm(node, s.neighbourCommunity(node));
+		p.moveToComm(node, comm);
+		return p.modularity();
+	}
+
+	@Benchmark
+	public long dnodecomm(Moves s) {
+		int node = s.nextNode();
+		return s.g.partitioning().dnodecomm(node, s.neighbourCommunity(node));
+	}
+}
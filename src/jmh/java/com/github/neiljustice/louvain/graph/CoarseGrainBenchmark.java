@@ -0,0 +1,68 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.graph;
+
+import com.github.neiljustice.louvain.bench.GraphFixture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Builds the community graph of a partitioned fixture, as LouvainDetector does
+ * between layers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoarseGrainBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Partitioned extends GraphFixture {
+		@Param({ "1", "4" })
+		public int threads;
+
+		int[] commToNode;
+		int numComms;
+
+		@Setup(Level.Trial)
+		public void mapCommunities() {
+			commToNode = new int[g.order()];
+			boolean[] isFound = new boolean[g.order()];
+			for (int node = 0; node < g.order(); node++) {
+				int comm = g.partitioning().community(node);
+				if (!isFound[comm]) {
+					isFound[comm] = true;
+					commToNode[comm] = numComms++;
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public Graph coarseGrain(Partitioned s) {
+		GraphBuilder builder = new GraphBuilder(0);
+		builder.setThreads(s.threads);
+		return builder.coarseGrain(s.g, s.commToNode, s.numComms);
+	}
+}
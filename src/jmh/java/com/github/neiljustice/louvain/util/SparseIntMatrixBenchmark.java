@@ -0,0 +1,76 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Random reads and increments of a SparseIntMatrix filled to a given number of
+ * entries, as the community matrix is.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SparseIntMatrixBenchmark {
+	private static final int KEYS = 1 << 16;
+
+	@Param({ "1000", "100000" })
+	public int size;
+
+	@Param({ "100000" })
+	public int entries;
+
+	private SparseIntMatrix matrix;
+	private final int[] xs = new int[KEYS], ys = new int[KEYS];
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void fill() {
+		Random rnd = new Random(1);
+		matrix = new SparseIntMatrix(size);
+		for (int i = 0; i < entries; i++) {
+			matrix.add(rnd.nextInt(size), rnd.nextInt(size), 1);
+		}
+		for (int i = 0; i < KEYS; i++) {
+			xs[i] = rnd.nextInt(size);
+			ys[i] = rnd.nextInt(size);
+		}
+	}
+
+	@Benchmark
+	public int get() {
+		next = (next + 1) & (KEYS - 1);
+		return matrix.get(xs[next], ys[next]);
+	}
+
+	@Benchmark
+	public void add() {
+		next = (next + 1) & (KEYS - 1);
+		matrix.add(xs[next], ys[next], 1);
+	}
+}
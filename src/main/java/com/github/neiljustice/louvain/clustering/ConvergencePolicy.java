@@ -0,0 +1,87 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.clustering;
+
+/**
+ * Decides when local moving on a layer has converged. A layer stops once a
+ * sweep gains no more than the epsilon for that layer, once it has run the
+ * maximum number of sweeps, or once a sweep moves fewer than the given fraction
+ * of the layer's nodes.
+ *
+ * Looser settings trade modularity for time. LouvainDetector.layerReports()
+ * records, for each layer the policy cut short, the gain of its last sweep.
+ */
+public class ConvergencePolicy {
+	public static final double DEFAULT_EPSILON = 0.000001;
+	/** Runs every layer until a sweep gains no more than DEFAULT_EPSILON. */
+	public static final ConvergencePolicy DEFAULT = new ConvergencePolicy(new double[] { DEFAULT_EPSILON },
+			Integer.MAX_VALUE, 0d);
+
+	private final double[] epsilons;
+	private final int maxSweeps;
+	private final double minMovedFraction;
+
+	/**
+	 * @param epsilons         minimum gain per sweep on layer 0, 1, ...; the last
+	 *                         entry applies to all deeper layers
+	 * @param maxSweeps        sweeps allowed per layer
+	 * @param minMovedFraction fraction of a layer's nodes a sweep must move for
+	 *                         another sweep to follow
+	 */
+	public ConvergencePolicy(double[] epsilons, int maxSweeps, double minMovedFraction) {
+		if (epsilons.length == 0)
+			throw new IllegalArgumentException("no epsilons given");
+		if (maxSweeps < 1)
+			throw new IllegalArgumentException("maxSweeps must be positive: " + maxSweeps);
+		this.epsilons = epsilons.clone();
+		this.maxSweeps = maxSweeps;
+		this.minMovedFraction = minMovedFraction;
+	}
+
+	/**
+	 * Epsilon falling geometrically from first on layer 0 to last, by factor per
+	 * layer, with no cap on sweeps.
+	 */
+	public static ConvergencePolicy schedule(double first, double last, double factor) {
+		int layers = 1;
+		for (double eps = first; eps * factor > last && layers < 64; eps *= factor)
+			layers++;
+		double[] epsilons = new double[layers + 1];
+		for (int i = 0; i < layers; i++)
+			epsilons[i] = first * Math.pow(factor, i);
+		epsilons[layers] = last;
+		return new ConvergencePolicy(epsilons, Integer.MAX_VALUE, 0d);
+	}
+
+	public double epsilon(int layer) {
+		return epsilons[Math.min(layer, epsilons.length - 1)];
+	}
+
+	public int maxSweeps() {
+		return maxSweeps;
+	}
+
+	public double minMovedFraction() {
+		return minMovedFraction;
+	}
+}
@@ -0,0 +1,201 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.clustering;
+
+import com.github.neiljustice.louvain.graph.*;
+import com.github.neiljustice.louvain.util.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs LouvainDetector several times on one graph with different seeds, on a
+ * fork-join pool, and keeps the hierarchy with the highest final modularity.
+ * The runs share the graph (see Graph.newPartitioning), and only the best
+ * hierarchy so far is kept, so memory grows with the number of threads rather
+ * than the number of runs.
+ *
+ * If a consensus threshold is set, each finished run also adds to a count,
+ * per edge of the graph, of the runs that put both its ends in the same final
+ * community. The consensus graph keeps the edges counted in at least that
+ * fraction of runs, weighted by their count, and is clustered in turn
+ * (Lancichinetti and Fortunato, 2012). Only pairs of neighbours are counted,
+ * so this takes one int per edge.
+ */
+public class EnsembleDetector implements Clusterer {
+	private final Graph g;
+	private final long[] seeds;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private double threshold = -1d; // no consensus if negative
+	private IntArray agreements; // runs co-assigning the ends of each edge
+	private final double[] modularities;
+	private List<int[]> best;
+	private int bestRun;
+	private List<int[]> consensus;
+
+	public EnsembleDetector(Graph g, int runs, long seed) {
+		if (runs < 1)
+			throw new IllegalArgumentException("runs must be positive: " + runs);
+		this.g = g;
+		seeds = new long[runs];
+		modularities = new double[runs];
+		SplittableRandom rnd = new SplittableRandom(seed);
+		for (int i = 0; i < runs; i++) {
+			seeds[i] = rnd.nextLong();
+		}
+	}
+
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		this.threads = threads;
+	}
+
+	/**
+	 * Also builds and clusters the consensus graph, keeping the edges whose ends
+	 * share a community in at least the given fraction of runs.
+	 */
+	public void setConsensus(double threshold) {
+		if (threshold < 0d || threshold > 1d)
+			throw new IllegalArgumentException("threshold must be between 0 and 1: " + threshold);
+		this.threshold = threshold;
+	}
+
+	// the hierarchy of the best run, ties going to the earliest
+	public List<int[]> run() {
+		best = null;
+		consensus = null;
+		agreements = threshold < 0d ? null : IntArray.allocate(g.numEdges(), g.isOffHeap());
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new Runs(0, seeds.length));
+		} finally {
+			pool.shutdown();
+		}
+
+		if (agreements != null) {
+			Graph cg = consensusGraph();
+			consensus = cg.size() == 0 ? singletons() : new LouvainDetector(cg, seeds[0]).run();
+			agreements = null;
+		}
+		return best;
+	}
+
+	public List<int[]> communities() {
+		return best;
+	}
+
+	// the hierarchy found on the consensus graph, if a threshold was set
+	public List<int[]> consensus() {
+		return consensus;
+	}
+
+	public double modularity() {
+		return modularities[bestRun];
+	}
+
+	// the final modularity of each run, in seed order
+	public double[] modularities() {
+		return modularities.clone();
+	}
+
+	public long seed(int run) {
+		return seeds[run];
+	}
+
+	public int bestRun() {
+		return bestRun;
+	}
+
+	private void runOnce(int run) {
+		LouvainDetector detector = new LouvainDetector(g, seeds[run]);
+		detector.setThreads(1);
+		List<int[]> communities = detector.run();
+		modularities[run] = detector.modularity();
+		if (agreements != null)
+			addAgreements(communities.get(communities.size() - 1));
+		synchronized (this) {
+			if (best == null || modularities[run] > modularities[bestRun]
+					|| (modularities[run] == modularities[bestRun] && run < bestRun)) {
+				best = communities;
+				bestRun = run;
+			}
+		}
+	}
+
+	private void addAgreements(int[] communities) {
+		synchronized (agreements) {
+			for (int n = 0; n < g.order(); n++) {
+				for (long i = g.neighbourStart(n); i < g.neighbourEnd(n); i++) {
+					if (communities[g.neighbour(i)] == communities[n])
+						agreements.add(i, 1);
+				}
+			}
+		}
+	}
+
+	// nodes numbered as in g, with an edge wherever enough runs agreed
+	private Graph consensusGraph() {
+		double min = Math.max(1d, threshold * seeds.length);
+		GraphBuilder builder = new GraphBuilder(0);
+		for (int n = 0; n < g.order(); n++) {
+			builder.addNode(n);
+		}
+		for (int n = 0; n < g.order(); n++) {
+			for (long i = g.neighbourStart(n); i < g.neighbourEnd(n); i++) {
+				int neigh = g.neighbour(i);
+				if (neigh > n && agreements.get(i) >= min)
+					builder.addEdgeSym(n, neigh, agreements.get(i));
+			}
+		}
+		return builder.build();
+	}
+
+	private List<int[]> singletons() {
+		int[] communities = new int[g.order()];
+		for (int n = 0; n < communities.length; n++) {
+			communities[n] = n;
+		}
+		return new ArrayList<int[]>(Collections.singletonList(communities));
+	}
+
+	// runs [from, to), halving the range until one run is left
+	class Runs extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from, to;
+
+		Runs(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from == 1) {
+				runOnce(from);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Runs(from, mid), new Runs(mid, to));
+			}
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.clustering;
+
+/**
+ * JDK Flight Recorder events for each sweep and layer report, so runs can be
+ * profiled in production. The events are in JfrEvents, under src/jfr/java,
+ * which only the jfr profile compiles (active from JDK 11), so that this
+ * source set still builds on a JDK 8 without jdk.jfr.
+ */
+abstract class FlightRecorderEvents implements LouvainListener {
+	private static final String EVENTS = "com.github.neiljustice.louvain.clustering.JfrEvents";
+
+	// true if a recording has sweep events enabled, so reports are worth building
+	abstract boolean sweepsEnabled();
+
+	/*
+	 * The events, or null if the runtime has no JFR API or the jar was built
+	 * without it. They are only loaded by name, so that nothing here links
+	 * against jdk.jfr unless it is there.
+	 */
+	static FlightRecorderEvents createIfAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return (FlightRecorderEvents) Class.forName(EVENTS).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.clustering;
+
+import java.util.*;
+
+/**
+ * The communities found on each layer of a run, as partitionings of the base
+ * layer. get(layer) builds a layer's array when first asked for, in one pass
+ * down the layers below it, and keeps it; community(layer, node) answers for a
+ * single node without building anything.
+ *
+ * Community numbers are those of the layer itself: on layer k, a community is
+ * numbered by one of its nodes on the graph of layer k.
+ *
+ * The arrays returned are shared, and layer 0 is also what the layers above it
+ * are mapped from, so copy one before changing it.
+ */
+public class Hierarchy extends AbstractList<int[]> {
+	private final int[][] communities; // of each node, on each layer's own graph
+	private final int[][] commToNode; // node on the layer above of each community
+	private final int[][] mapped; // built on demand
+
+	Hierarchy(List<int[]> communities, List<int[]> commToNode) {
+		this.communities = communities.toArray(new int[0][]);
+		this.commToNode = commToNode.toArray(new int[0][]);
+		mapped = new int[this.communities.length][];
+	}
+
+	@Override
+	public int size() {
+		return communities.length;
+	}
+
+	@Override
+	public synchronized int[] get(int layer) {
+		if (layer < 0 || layer >= communities.length)
+			throw new IndexOutOfBoundsException("Layer: " + layer + ", layers: " + communities.length);
+		if (mapped[layer] == null)
+			mapped[layer] = layer == 0 ? communities[0] : map(layer);
+		return mapped[layer];
+	}
+
+	// the community of a base layer node on the given layer
+	public int community(int layer, int node) {
+		if (layer < 0 || layer >= communities.length)
+			throw new IndexOutOfBoundsException("Layer: " + layer + ", layers: " + communities.length);
+		for (int l = 0; l < layer; l++) {
+			node = commToNode[l][communities[l][node]];
+		}
+		return communities[layer][node];
+	}
+
+	// the communities of a layer's nodes, numbered on its own graph
+	int[] ownCommunities(int layer) {
+		return communities[layer];
+	}
+
+	int[] commToNode(int layer) {
+		return commToNode[layer];
+	}
+
+	public int order() {
+		return communities.length == 0 ? 0 : communities[0].length;
+	}
+
+	// pushes a layer's communities down to the base layer, one layer at a time
+	private int[] map(int layer) {
+		int[] above = communities[layer];
+		for (int l = layer - 1; l >= 0; l--) {
+			int[] comms = communities[l];
+			int[] map = commToNode[l];
+			int[] a = new int[comms.length];
+			for (int node = 0; node < comms.length; node++) {
+				a[node] = above[map[comms[node]]];
+			}
+			above = a;
+		}
+		return above;
+	}
+}
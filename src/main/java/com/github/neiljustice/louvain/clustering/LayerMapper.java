@@ -30,80 +30,38 @@ import java.util.*;
  * Given a list of graphs where each node in graph n + 1 is a community im graph
  * n, maps the partitionings of all graphs (except the first) as if they were
  * partitionings of the first graph.
+ *
+ * Only int arrays are kept for each layer, not its Graph or Partitioning, so
+ * a layer's graph can be dropped once the next one has been built. run()
+ * returns a Hierarchy, which maps layers to the base layer when asked.
  */
 public class LayerMapper {
-	private final List<Graph> graphs = new ArrayList<Graph>();
-	// maps between communities on L and nodes on L + 1:
-	private final List<Map<Integer, Integer>> layerMaps = new ArrayList<>();
-	private int layer = 0;
+	// for each layer mapped so far: the community of each node, and the node on
+	// the layer above of each community (-1 for unused communities)
+	private final List<int[]> communities = new ArrayList<int[]>();
+	private final List<int[]> commToNode = new ArrayList<int[]>();
 
 	// map from community -> node on layer above
-	protected Map<Integer, Integer> createLayerMap(Graph g) {
+	protected int[] createLayerMap(Graph.Partitioning p) {
+		int[] comms = p.communities();
+		int[] map = new int[comms.length];
+		Arrays.fill(map, -1);
 		int count = 0;
-		layer++;
-		boolean[] isFound = new boolean[g.order()];
-		Map<Integer, Integer> map = new HashMap<Integer, Integer>();
-		// Arrays.sort(communities);
 
-		for (int node = 0; node < g.order(); node++) {
-			int comm = g.partitioning().community(node);
-			if (!isFound[comm]) {
-				map.put(comm, count);
-				isFound[comm] = true;
-				count++;
-			}
+		for (int node = 0; node < comms.length; node++) {
+			int comm = comms[node];
+			if (map[comm] < 0)
+				map[comm] = count++;
 		}
-		if (map.size() != g.partitioning().numComms())
-			throw new Error("Map creation failed: " + g.partitioning().numComms() + " != " + map.size());
-		layerMaps.add(map);
-		graphs.add(g);
+		if (count != p.numComms())
+			throw new Error("Map creation failed: " + p.numComms() + " != " + count);
+		communities.add(comms);
+		commToNode.add(map);
 		return map;
 	}
 
-	// uses the layer maps to assign a community from each layer to the base layer
-	// graph.
-	protected List<int[]> run() {
-		List<int[]> rawComms = new ArrayList<int[]>();
-		List<int[]> communities = new ArrayList<int[]>();
-		communities.add(graphs.get(0).partitioning().communities());
-
-		for (int i = 0; i < layer; i++) {
-			rawComms.add(graphs.get(i).partitioning().communities());
-		}
-
-		for (int i = 0; i < layer - 1; i++) {
-			communities.add(mapToBaseLayer(i, rawComms));
-		}
-
-		return communities;
-	}
-
-	// maps layers to each other until the specified layer has been mapped to the
-	// base layer
-	private int[] mapToBaseLayer(int layer, List<int[]> rawComms) {
-		int[] a = mapToNextLayer(graphs.get(layer), layerMaps.get(layer), rawComms.get(layer + 1));
-		layer--;
-
-		while (layer >= 0) {
-			a = mapToNextLayer(graphs.get(layer), layerMaps.get(layer), a);
-			layer--;
-		}
-
-		return a;
-	}
-
-	// maps each node in a layer to its community on the layer above it
-	private int[] mapToNextLayer(Graph g, Map<Integer, Integer> map, int[] commsL2) {
-		int[] commsL1 = g.partitioning().communities();
-		int[] NL1toCL2 = new int[g.order()];
-
-		for (int nodeL1 = 0; nodeL1 < g.order(); nodeL1++) {
-			int commL1 = commsL1[nodeL1];
-			int nodeL2 = map.get(commL1);
-			int commL2 = commsL2[nodeL2];
-			NL1toCL2[nodeL1] = commL2;
-		}
-
-		return NL1toCL2;
+	// the communities of every mapped layer, as partitionings of the base layer
+	protected Hierarchy run() {
+		return new Hierarchy(communities, commToNode);
 	}
 }
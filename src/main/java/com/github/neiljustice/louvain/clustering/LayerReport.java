@@ -0,0 +1,136 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.clustering;
+
+/**
+ * What local moving did on one layer of a LouvainDetector run, and how long it
+ * and the coarse-graining of the layer took.
+ */
+public class LayerReport {
+	public enum StopReason {
+		/** no node moved, or none was left to visit */
+		NO_MOVES,
+		/** the last sweep gained no more than the layer's epsilon */
+		CONVERGED,
+		/** the layer ran the maximum number of sweeps */
+		MAX_SWEEPS,
+		/** the last sweep moved too small a fraction of the nodes */
+		FEW_MOVES,
+		/** the run's time budget ran out, possibly part way through a sweep */
+		DEADLINE,
+		/** the run was cancelled, possibly part way through a sweep */
+		CANCELLED
+	}
+
+	private final int layer;
+	private final int order;
+	private final long numEdges;
+	private final int sweeps;
+	private final int moves;
+	private final double modularity;
+	private final double lastGain;
+	private final StopReason stopReason;
+	private final long movingNanos;
+	private final long coarseningNanos; // 0 for the last layer
+	private final long usedHeap; // bytes of heap in use after the layer
+
+	LayerReport(int layer, int order, long numEdges, int sweeps, int moves, double modularity, double lastGain,
+			StopReason stopReason, long movingNanos, long coarseningNanos, long usedHeap) {
+		this.layer = layer;
+		this.order = order;
+		this.numEdges = numEdges;
+		this.sweeps = sweeps;
+		this.moves = moves;
+		this.modularity = modularity;
+		this.lastGain = lastGain;
+		this.stopReason = stopReason;
+		this.movingNanos = movingNanos;
+		this.coarseningNanos = coarseningNanos;
+		this.usedHeap = usedHeap;
+	}
+
+	public int layer() {
+		return layer;
+	}
+
+	public int order() {
+		return order;
+	}
+
+	public long numEdges() {
+		return numEdges;
+	}
+
+	public int sweeps() {
+		return sweeps;
+	}
+
+	public int moves() {
+		return moves;
+	}
+
+	public double modularity() {
+		return modularity;
+	}
+
+	public double lastGain() {
+		return lastGain;
+	}
+
+	public StopReason stopReason() {
+		return stopReason;
+	}
+
+	public long movingNanos() {
+		return movingNanos;
+	}
+
+	public long coarseningNanos() {
+		return coarseningNanos;
+	}
+
+	public long usedHeap() {
+		return usedHeap;
+	}
+
+	// true if the default policy would have run another sweep
+	public boolean stoppedEarly() {
+		return stopReason != StopReason.NO_MOVES && lastGain > ConvergencePolicy.DEFAULT_EPSILON;
+	}
+
+	/**
+	 * Estimate of the modularity given up on this layer by stopping early: the
+	 * gain of the last sweep, which the next one would most likely not exceed.
+	 * It is not measured; the sweeps that would have followed can add up to
+	 * more, and coarser layers may recover some of it.
+	 */
+	public double estimatedForgoneGain() {
+		return stoppedEarly() ? lastGain : 0d;
+	}
+
+	@Override
+	public String toString() {
+		return "layer " + layer + ": order " + order + ", " + sweeps + " sweeps, " + moves + " moves, modularity "
+				+ modularity + ", stopped: " + stopReason;
+	}
+}
@@ -26,18 +26,42 @@ package com.github.neiljustice.louvain.clustering;
 import com.github.neiljustice.louvain.graph.*;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
 
 /**
  * Implementation of the Louvain method of community detection.
+ *
+ * A detector keeps its communities in Partitionings of its own and never
+ * modifies the graph it is given, so any number of detectors can run on one
+ * graph at the same time, each on its own thread.
  */
 public class LouvainDetector implements Clusterer {
+	private static final int CHECK_INTERVAL = 1024; // nodes visited between stop checks
 	private int totalMoves = 0;
 	private int layer = 0; // current community layer
 	private final List<Graph> graphs = new ArrayList<Graph>();
+	private final List<Graph.Partitioning> partitions = new ArrayList<Graph.Partitioning>(); // one per graph
 	private final Maximiser m = new Maximiser();
 	private final Random rnd;
-	private final LayerMapper mapper = new LayerMapper();
-	private List<int[]> communities;
+	private int threads = 1;
+	private boolean deterministic = false;
+	private SweepStrategy strategy = SweepStrategy.FULL;
+	private ConvergencePolicy policy = ConvergencePolicy.DEFAULT;
+	private final List<LayerReport> reports = new ArrayList<LayerReport>();
+	private final List<LouvainListener> listeners = new ArrayList<LouvainListener>();
+	private static final FlightRecorderEvents flightRecorder = FlightRecorderEvents.createIfAvailable();
+	private LayerMapper mapper = new LayerMapper();
+	private Hierarchy communities;
+	private long budgetNanos = Long.MAX_VALUE;
+	private long runStart;
+	private volatile boolean cancelled = false;
+	private boolean partial = false;
+	private int[] seeds; // nodes to visit at first on the current layer, or null for all
+	// while update() runs: the run it follows, and the node of each node of the
+	// current layer on the same layer of that run, or -1
+	private Hierarchy previous;
+	private int[] counterparts;
 
 	private LouvainDetector() {
 		rnd = new Random();
@@ -46,69 +70,487 @@ public class LouvainDetector implements Clusterer {
 	public LouvainDetector(Graph g, long seed) {
 		this();
 		graphs.add(g);
+		partitions.add(g.newPartitioning());
 		rnd.setSeed(seed);
 	}
 
 	public LouvainDetector(Graph g) {
 		this();
 		graphs.add(g);
+		partitions.add(g.newPartitioning());
 		long seed = 0; // rnd.nextLong();
 		rnd.setSeed(seed);
 	}
 
+	/**
+	 * Sets the number of threads used for local moving. With more than one, nodes
+	 * are moved concurrently and the result may vary from run to run.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		this.threads = threads;
+	}
+
+	/**
+	 * If set, local moving sweeps one colour class of the graph at a time, so
+	 * that a given seed gives the same partition whatever the number of threads.
+	 */
+	public void setDeterministic(boolean deterministic) {
+		this.deterministic = deterministic;
+	}
+
+	public void setSweepStrategy(SweepStrategy strategy) {
+		this.strategy = strategy;
+	}
+
+	public void setConvergencePolicy(ConvergencePolicy policy) {
+		this.policy = policy;
+	}
+
+	/**
+	 * Limits each later run to the given time. Local moving checks the budget
+	 * between batches of nodes and between sweeps, and once it has run out the
+	 * run stops and returns the hierarchy reached so far; see isPartial().
+	 * Coarse-graining a layer is not interrupted.
+	 */
+	public void setTimeBudget(long time, TimeUnit unit) {
+		if (time <= 0)
+			throw new IllegalArgumentException("time budget must be positive: " + time);
+		budgetNanos = unit.toNanos(time);
+	}
+
+	public void clearTimeBudget() {
+		budgetNanos = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Asks the current run, or the next one if none is in progress, to stop as
+	 * it would at the end of its time budget. May be called from any thread.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * True if the last run ran out of time or was cancelled. Its communities are
+	 * then the best hierarchy reached so far: every layer up to the one being
+	 * worked on, which may be only partly optimised.
+	 */
+	public boolean isPartial() {
+		return partial;
+	}
+
+	// called after every sweep and layer of later runs
+	public void addListener(LouvainListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(LouvainListener listener) {
+		listeners.remove(listener);
+	}
+
 	public List<int[]> run() {
 		return run(9999);
 	}
 
 	public List<int[]> run(int maxLayers) {
+		return run(maxLayers, null);
+	}
+
+	/**
+	 * Applies a batch of edge changes to the graph of the last run and
+	 * re-clusters it. The base layer starts from its previous partition, with
+	 * its community degrees patched from the rows of the changed nodes, and only
+	 * the nodes the changes can affect are revisited (delta-screening): the
+	 * endpoints of every change, the neighbours of edges inserted between
+	 * communities, and the members of communities that lost an internal edge.
+	 * Nodes they move queue their neighbours in turn.
+	 *
+	 * Each coarser layer starts from the same layer of the last run, and only
+	 * its nodes whose communities below changed are revisited. The new graph
+	 * and the coarse graphs are still built in full, so a batch costs one copy
+	 * of the edges and one aggregation per layer, but local moving follows the
+	 * size of the change.
+	 */
+	public List<int[]> update(EdgeBatch batch) {
+		if (communities == null)
+			throw new IllegalStateException("update() needs a previous run()");
+		Graph old = graphs.get(0);
+		GraphBuilder builder = new GraphBuilder(0);
+		builder.setOffHeap(old.isOffHeap());
+		Graph g = builder.update(old, batch);
+
+		LongIdMap endpoints = new LongIdMap(2 * batch.size());
+		for (int c = 0; c < batch.size(); c++) {
+			endpoints.add(g.node(batch.id1(c)));
+			endpoints.add(g.node(batch.id2(c)));
+		}
+		int[] touched = new int[endpoints.size()];
+		for (int i = 0; i < touched.length; i++) {
+			touched[i] = (int) endpoints.id(i);
+		}
+		Graph.Partitioning p = g.newPartitioning(partitions.get(0), touched);
+		int[] affected = screen(g, p.communities(), batch, endpoints);
+
+		Hierarchy last = communities;
+		reset(g, p);
+		previous = last;
+		counterparts = new int[g.order()];
+		for (int node = 0; node < g.order(); node++) {
+			counterparts[node] = node < old.order() ? node : -1;
+		}
+		return run(9999, affected);
+	}
+
+	/**
+	 * Runs from an existing partition of the base graph instead of singletons,
+	 * such as a layer of an earlier result or of a PartitionReader. It is
+	 * installed in one pass over the edges, and local moving and coarsening
+	 * carry on from there, so a partition of a slightly different graph
+	 * converges in a few sweeps. Each community must be below the graph's order.
+	 */
+	public List<int[]> warmStart(int[] membership) {
+		reset(graphs.get(0), graphs.get(0).newPartitioning(membership));
+		return run(9999, null);
+	}
+
+	// drops any coarse layers and starts again from a partitioning of g
+	private void reset(Graph g, Graph.Partitioning p) {
+		graphs.clear();
+		graphs.add(g);
+		partitions.clear();
+		partitions.add(p);
+		layer = 0;
+		mapper = new LayerMapper();
+		reports.clear();
+	}
+
+	// the nodes of g a batch of changes may give a better community, starting
+	// with the endpoints of the changes. The members of a weakened community are
+	// found in one pass over the nodes, made only if there are any.
+	private int[] screen(Graph g, int[] membership, EdgeBatch batch, LongIdMap endpoints) {
+		LongIdMap affected = endpoints.copy();
+		LongIdMap weakened = new LongIdMap(); // communities that lost an internal edge
+		for (int c = 0; c < batch.size(); c++) {
+			int n1 = g.node(batch.id1(c));
+			int n2 = g.node(batch.id2(c));
+			boolean internal = membership[n1] == membership[n2];
+			if (batch.isDeletion(c) && internal) {
+				weakened.add(membership[n1]);
+			} else if (!batch.isDeletion(c) && !internal) {
+				addNeighbours(g, n1, affected);
+				addNeighbours(g, n2, affected);
+			}
+		}
+		if (weakened.size() > 0) {
+			for (int node = 0; node < g.order(); node++) {
+				if (weakened.get(membership[node]) >= 0)
+					affected.add(node);
+			}
+		}
+
+		int[] nodes = new int[affected.size()];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = (int) affected.id(i);
+		}
+		return nodes;
+	}
+
+	private void addNeighbours(Graph g, int node, LongIdMap nodes) {
+		for (long i = g.neighbourStart(node); i < g.neighbourEnd(node); i++) {
+			nodes.add(g.neighbour(i));
+		}
+	}
+
+	// seeds, if given, are the only nodes visited on the base layer at first
+	private List<int[]> run(int maxLayers, int[] seeds) {
 		if (maxLayers <= 0)
 			return null;
+		this.seeds = seeds;
 
-		do {
-			totalMoves = m.run(graphs.get(layer));
-			if (totalMoves > 0 && maxLayers >= layer)
-				addNewLayer();
-		} while (totalMoves > 0 && maxLayers >= layer);
+		runStart = System.nanoTime();
+		partial = false;
+		m.sweep = threads > 1 || deterministic ? new ParallelSweep(threads, deterministic, new BooleanSupplier() {
+			public boolean getAsBoolean() {
+				return interruption() != null;
+			}
+		}) : null;
+		try {
+			boolean merged;
+			do {
+				Graph g = graphs.get(layer);
+				Graph.Partitioning p = partitions.get(layer);
+				long start = System.nanoTime();
+				totalMoves = m.run(p, this.seeds);
+				long moved = System.nanoTime();
+				partial = m.stopReason == LayerReport.StopReason.DEADLINE
+						|| m.stopReason == LayerReport.StopReason.CANCELLED;
+				merged = hasMerged();
+				// a partial layer is mapped to the base layer but not coarse-grained;
+				// the mapper needs the base layer even if nothing has moved yet
+				if (partial && ((merged && maxLayers >= layer) || layer == 0))
+					mapper.createLayerMap(p);
+				else if (merged && maxLayers >= layer)
+					addNewLayer();
+				long coarsened = System.nanoTime();
+				Runtime runtime = Runtime.getRuntime();
+				LayerReport report = new LayerReport(g.layer(), g.order(), g.numEdges(), m.sweeps, totalMoves,
+						p.modularity(), m.lastGain, m.stopReason, moved - start, coarsened - moved,
+						runtime.totalMemory() - runtime.freeMemory());
+				reports.add(report);
+				if (flightRecorder != null)
+					flightRecorder.layerDone(report);
+				for (LouvainListener listener : listeners)
+					listener.layerDone(report);
+			} while (merged && maxLayers >= layer && !partial);
+		} finally {
+			if (m.sweep != null)
+				m.sweep.shutdown();
+			cancelled = false;
+			previous = null;
+			counterparts = null;
+		}
 
 		communities = mapper.run();
 		return communities;
 	}
 	
+	/**
+	 * The original ids of the members of each final community, boxed. Ids must
+	 * fit in an int; use getClusterIds() or getClusterNames() for 64-bit or
+	 * string ids.
+	 */
 	public Collection<List<Integer>> getClusters () {
-		int[] finalCommunities = communities.get(communities.size() - 1);
-		Map<Integer, Integer> reverseIndex = graphs.get(0).reverseIndex();
-		Map<Integer, List<Integer>> clusters = new HashMap<Integer, List<Integer>>();    // key: community ID, value:
+		Graph g = graphs.get(0);
+		if (g.names() != null)
+			throw new Error("the graph has string ids; use getClusterNames()");
+		List<List<Integer>> clusters = new ArrayList<List<Integer>>();
+		for (int[] members : clusterNodes()) {
+			List<Integer> cluster = new ArrayList<Integer>(members.length);
+			for (int node : members) {
+				long id = g.id(node);
+				if (id != (int) id)
+					throw new Error("id " + id + " does not fit in an int; use getClusterIds()");
+				cluster.add((int) id);
+			}
+			clusters.add(cluster);
+		}
+		return clusters;
+	}
+
+	// the original ids of the members of each final community
+	public long[][] getClusterIds() {
+		Graph g = graphs.get(0);
+		int[][] nodes = clusterNodes();
+		long[][] clusters = new long[nodes.length][];
+		for (int c = 0; c < nodes.length; c++) {
+			clusters[c] = new long[nodes[c].length];
+			for (int i = 0; i < nodes[c].length; i++) {
+				clusters[c][i] = g.id(nodes[c][i]);
+			}
+		}
+		return clusters;
+	}
 
-		for (int i = 0; i < finalCommunities.length; ++i) {
-			int communityId = finalCommunities[i];
-			if (clusters.get(communityId) == null) {
-				clusters.put(communityId, new ArrayList<>());
+	// the same, for a graph built with string ids
+	public String[][] getClusterNames() {
+		StringIdMap names = graphs.get(0).names();
+		if (names == null)
+			throw new IllegalStateException("the graph has no string ids");
+		int[][] nodes = clusterNodes();
+		String[][] clusters = new String[nodes.length][];
+		for (int c = 0; c < nodes.length; c++) {
+			clusters[c] = new String[nodes[c].length];
+			for (int i = 0; i < nodes[c].length; i++) {
+				clusters[c][i] = names.id(nodes[c][i]);
 			}
-			clusters.get(communityId).add(reverseIndex.get(i));
 		}
-		return clusters.values();
+		return clusters;
+	}
+
+	// the nodes of each final community, grouped with a counting sort
+	private int[][] clusterNodes() {
+		int[] finalCommunities = communities.get(communities.size() - 1);
+		int[] sizes = new int[finalCommunities.length];
+		for (int comm : finalCommunities) {
+			sizes[comm]++;
+		}
+		int[][] members = new int[finalCommunities.length][];
+		int numClusters = 0;
+		for (int comm = 0; comm < sizes.length; comm++) {
+			if (sizes[comm] > 0) {
+				members[comm] = new int[sizes[comm]];
+				numClusters++;
+			}
+		}
+		int[][] clusters = new int[numClusters][];
+		Arrays.fill(sizes, 0);
+		int c = 0;
+		for (int node = 0; node < finalCommunities.length; node++) {
+			int comm = finalCommunities[node];
+			if (sizes[comm] == 0)
+				clusters[c++] = members[comm];
+			members[comm][sizes[comm]++] = node;
+		}
+		return clusters;
 	}
 
 	public double modularity() {
-		return graphs.get(layer).partitioning().modularity();
+		return partitions.get(layer).modularity();
 	}
 
 	public List<int[]> communities() {
 		return communities;
 	}
 
+	// the base layer's partitioning, as local moving left it
+	Graph.Partitioning basePartitioning() {
+		return partitions.get(0);
+	}
+
+	// the communities of the last run, mapped to the base layer on demand
+	public Hierarchy hierarchy() {
+		return communities;
+	}
+
+	// one report per layer local moving ran on
+	public List<LayerReport> layerReports() {
+		return reports;
+	}
+
+	// estimated modularity given up by the convergence policy, over all layers
+	public double estimatedForgoneGain() {
+		double sum = 0d;
+		for (LayerReport report : reports) {
+			sum += report.estimatedForgoneGain();
+		}
+		return sum;
+	}
+
+	// null unless the run has been cancelled or is out of time
+	private LayerReport.StopReason interruption() {
+		if (cancelled)
+			return LayerReport.StopReason.CANCELLED;
+		if (System.nanoTime() - runStart > budgetNanos)
+			return LayerReport.StopReason.DEADLINE;
+		return null;
+	}
+
+	// true if the current layer has fewer communities than nodes. From
+	// singletons this is the same as any node having moved; a layer carried
+	// over by update() has merged already, and is coarse-grained again.
+	private boolean hasMerged() {
+		Graph.Partitioning p = partitions.get(layer);
+		return p.numComms() < p.graph().order();
+	}
+
 	private void addNewLayer() {
 		Graph last = graphs.get(layer);
-		Map<Integer, Integer> map = mapper.createLayerMap(last);
-		layer++;
-		Graph coarse = new GraphBuilder(last.order()).coarseGrain(last, map);
+		Graph.Partitioning p = partitions.get(layer);
+		int[] commToNode = mapper.createLayerMap(p);
+		GraphBuilder builder = new GraphBuilder(0);
+		builder.setThreads(threads);
+		builder.setOffHeap(last.isOffHeap());
+		Graph coarse = builder.coarseGrain(p, commToNode, p.numComms());
 		graphs.add(coarse);
+		if (previous != null && layer + 1 < previous.size()) {
+			partitions.add(carryOver(p, commToNode, coarse));
+		} else {
+			partitions.add(coarse.newPartitioning());
+			seeds = null;
+			previous = null;
+			counterparts = null;
+		}
+		// the mapper has what it needs of a coarse layer, so it can be collected
+		if (layer > 0) {
+			graphs.set(layer, null);
+			partitions.set(layer, null);
+		}
+		layer++;
+	}
+
+	/*
+	 * Starts the layer above from the same layer of the previous run: each
+	 * coarse node joins the community its counterpart ended in. The coarse
+	 * nodes to visit are those with no counterpart and those of the communities
+	 * that hold a seed, a node that moved, or the community a node moved from.
+	 */
+	private Graph.Partitioning carryOver(Graph.Partitioning p, int[] commToNode, Graph coarse) {
+		int[] comms = p.communities();
+		int[] oldComms = previous.ownCommunities(layer);
+		int[] oldCommToNode = previous.commToNode(layer);
+		int[] oldAbove = previous.ownCommunities(layer + 1);
+
+		int[] above = new int[coarse.order()]; // counterpart of each coarse node
+		Arrays.fill(above, -1);
+		for (int node = 0; node < comms.length; node++) {
+			int k = commToNode[comms[node]];
+			if (above[k] < 0 && counterparts[node] >= 0)
+				above[k] = oldCommToNode[oldComms[counterparts[node]]];
+		}
+
+		// numbered by the first coarse node to join each community
+		int[] initial = new int[coarse.order()];
+		int[] label = new int[oldAbove.length];
+		Arrays.fill(label, -1);
+		boolean[] changed = new boolean[coarse.order()];
+		for (int k = 0; k < initial.length; k++) {
+			if (above[k] < 0) {
+				initial[k] = k;
+				changed[k] = true;
+			} else {
+				int comm = oldAbove[above[k]];
+				if (label[comm] < 0)
+					label[comm] = k;
+				initial[k] = label[comm];
+			}
+		}
+		for (int node : seeds) {
+			changed[commToNode[comms[node]]] = true;
+		}
+		for (int i = 0; i < m.numMoved; i++) {
+			changed[commToNode[comms[m.moved[i]]]] = true;
+			if (commToNode[m.movedFrom[i]] >= 0)
+				changed[commToNode[m.movedFrom[i]]] = true;
+		}
+
+		int count = 0;
+		for (boolean c : changed) {
+			if (c)
+				count++;
+		}
+		seeds = new int[count];
+		count = 0;
+		for (int k = 0; k < changed.length; k++) {
+			if (changed[k])
+				seeds[count++] = k;
+		}
+		counterparts = above;
+		return coarse.newPartitioning(initial);
 	}
 
 	class Maximiser {
-		private final double precision = 0.000001;
 		private Graph g;
+		private Graph.Partitioning p;
 		private int[] shuffledNodes;
+		private MoveEvaluator evaluator;
+		private ParallelSweep sweep; // null when single-threaded
+		// SweepStrategy.QUEUE: circular queue of nodes to visit, and its members
+		private int[] queue;
+		private int head, queued;
+		private BitSet inQueue;
+		private boolean seeded; // visiting only the queue given to run()
+		// the nodes moved by a seeded run, and the community each moved from
+		private int[] moved = new int[0];
+		private int[] movedFrom = new int[0];
+		private int numMoved;
+		// the last layer's outcome, for its LayerReport
+		private int sweeps;
+		private double lastGain;
+		private LayerReport.StopReason stopReason;
+		private int visited; // nodes visited by the last sweep
+		private LayerReport.StopReason interrupted; // set if a sweep was cut short
 
 		private int lastIndexOf(double[] a, double n) {
 			if (a == null)
@@ -122,7 +564,6 @@ public class LouvainDetector implements Clusterer {
 		}
 
 		private void shuffle(int[] a) {
-			final Random rnd = new Random(0);
 			int count = a.length;
 			for (int i = count; i > 1; i--) {
 				int r = rnd.nextInt(i);
@@ -146,11 +587,31 @@ public class LouvainDetector implements Clusterer {
 			a[j] = temp;
 		}
 
-		private int run(Graph g) {
-			this.g = g;
+		private int run(Graph.Partitioning p, int[] seeds) {
+			this.p = p;
+			g = p.graph();
+			seeded = seeds != null;
 			shuffledNodes = new int[g.order()];
 			fillRandomly(shuffledNodes);
+			if (sweep != null)
+				sweep.setPartitioning(p, shuffledNodes);
+			if (sweep == null || seeded)
+				evaluator = new MoveEvaluator(p);
+			if (usesQueue()) {
+				queue = new int[g.order()];
+				inQueue = new BitSet(queue.length);
+				int[] start = seeded ? seeds.clone() : shuffledNodes;
+				if (seeded)
+					shuffle(start);
+				System.arraycopy(start, 0, queue, 0, start.length);
+				for (int node : start)
+					inQueue.set(node);
+				head = 0;
+				queued = start.length;
+			}
 			totalMoves = 0;
+			numMoved = 0;
+			interrupted = null;
 
 			reassignCommunities();
 
@@ -158,27 +619,96 @@ public class LouvainDetector implements Clusterer {
 		}
 
 		private void reassignCommunities() {
-			double mod = g.partitioning().modularity();
+			double mod = p.modularity();
 			double oldMod;
 			int moves;
-			boolean hasChanged;
+			sweeps = 0;
 
 			do {
-				hasChanged = true;
 				oldMod = mod;
-				moves = maximiseLocalModularity();
+				long start = System.nanoTime();
+				visited = g.order();
+				if (usesQueue())
+					moves = maximiseFromQueue();
+				else
+					moves = sweep == null ? maximiseLocalModularity() : maximiseInParallel(oldMod);
 				totalMoves += moves;
-				mod = g.partitioning().modularity();
-				if (mod - oldMod <= precision)
-					hasChanged = false;
-				if (moves == 0)
-					hasChanged = false;
-			} while (hasChanged);
+				sweeps++;
+				mod = p.modularity();
+				assert Math.abs(mod - p.recomputeModularity()) < 1e-9 : "modularity drift: " + mod;
+				stopReason = stopReason(sweeps, mod - oldMod, moves);
+				if ((flightRecorder != null && flightRecorder.sweepsEnabled()) || !listeners.isEmpty())
+					sweepDone(new SweepReport(g.layer(), sweeps, moves, visited, mod, System.nanoTime() - start));
+			} while (stopReason == null);
+			lastGain = mod - oldMod;
+		}
+
+		private void sweepDone(SweepReport report) {
+			if (flightRecorder != null)
+				flightRecorder.sweepDone(report);
+			for (LouvainListener listener : listeners)
+				listener.sweepDone(report);
+		}
+
+		// null if the policy allows another sweep
+		private LayerReport.StopReason stopReason(int sweeps, double gain, int moves) {
+			if (interrupted != null)
+				return interrupted;
+			if (moves == 0 || (usesQueue() && queued == 0))
+				return LayerReport.StopReason.NO_MOVES;
+			if (gain <= policy.epsilon(g.layer()))
+				return LayerReport.StopReason.CONVERGED;
+			if (sweeps >= policy.maxSweeps())
+				return LayerReport.StopReason.MAX_SWEEPS;
+			if (moves < policy.minMovedFraction() * g.order())
+				return LayerReport.StopReason.FEW_MOVES;
+			return interruption();
+		}
+
+		private boolean usesQueue() {
+			return (strategy == SweepStrategy.QUEUE && sweep == null) || seeded;
+		}
+
+		// visits up to one layer's worth of queued nodes, so that the convergence
+		// check still runs as often as with full sweeps
+		private int maximiseFromQueue() {
+			int moves = 0;
+			for (visited = 0; visited < g.order() && queued > 0; visited++) {
+				if (visited % CHECK_INTERVAL == 0 && stopping())
+					break;
+				int node = queue[head];
+				head = (head + 1) % queue.length;
+				queued--;
+				inQueue.clear(node);
+				if (makeBestMove(node)) {
+					moves++;
+					enqueueNeighbours(node);
+				}
+			}
+			return moves;
+		}
+
+		// queues the neighbours of a node that are not in its new community
+		private void enqueueNeighbours(int node) {
+			int[] communities = p.communities();
+			int comm = communities[node];
+			for (long i = g.neighbourStart(node); i < g.neighbourEnd(node); i++) {
+				int neigh = g.neighbour(i);
+				if (communities[neigh] != comm && !inQueue.get(neigh)) {
+					queue[(head + queued) % queue.length] = neigh;
+					queued++;
+					inQueue.set(neigh);
+				}
+			}
 		}
 
 		private int maximiseLocalModularity() {
 			int moves = 0;
 			for (int i = 0; i < g.order(); i++) {
+				if (i % CHECK_INTERVAL == 0 && stopping()) {
+					visited = i;
+					break;
+				}
 				int node = shuffledNodes[i];
 				if (makeBestMove(node))
 					moves++;
@@ -186,32 +716,57 @@ public class LouvainDetector implements Clusterer {
 			return moves;
 		}
 
-		private boolean makeBestMove(int node) {
-			double max = 0d;
-			int best = -1;
-
-			for (int i = 0; i < g.neighbours(node).size(); i++) {
-				int community = g.partitioning().community(g.neighbours(node).get(i));
-				double inc = deltaModularity(node, community);
-				if (inc > max) {
-					max = inc;
-					best = community;
-				}
+		// a concurrent sweep acts on stale degrees and can lose modularity (as can
+		// a coloured one, when unconnected nodes join the same community); if it
+		// does, the sweep's moves are undone and it is reported as making none
+		private int maximiseInParallel(double oldMod) {
+			int moves = sweep.sweep();
+			if (sweep.stopped())
+				stopping();
+			sweep.settle();
+			if (p.modularity() < oldMod) {
+				sweep.undo();
+				return 0;
 			}
+			return moves;
+		}
 
-			if (best >= 0 && best != g.partitioning().community(node)) {
-				g.partitioning().moveToComm(node, best);
+		// records why a sweep is being cut short, if it is
+		private boolean stopping() {
+			interrupted = interruption();
+			return interrupted != null;
+		}
+
+		private boolean makeBestMove(int node) {
+			int best = evaluator.bestCommunity(node);
+
+			int own = p.community(node);
+			if (best < 0 || best == own)
+				return false;
+			if (!seeded) {
+				p.moveToComm(node, best);
 				return true;
-			} else
+			}
+			// bestCommunity() scores the node's own community with the node still
+			// in it. From a converged partition that lets nodes trade places without
+			// end, so in a seeded run a move must raise modularity to stand.
+			double before = p.modularity();
+			p.moveToComm(node, best);
+			if (p.modularity() <= before) {
+				p.moveToComm(node, own);
 				return false;
+			}
+			logMove(node, own);
+			return true;
 		}
 
-		// change in modularity if node is moved to community
-		private double deltaModularity(int node, int community) {
-			double dnodecomm = (double) g.partitioning().dnodecomm(node, community);
-			double ctot = (double) g.partitioning().totDegree(community);
-			double wdeg = (double) g.degree(node);
-			return dnodecomm - ((ctot * wdeg) / g.m2());
+		private void logMove(int node, int comm) {
+			if (numMoved == moved.length) {
+				moved = Arrays.copyOf(moved, Math.max(16, numMoved * 2));
+				movedFrom = Arrays.copyOf(movedFrom, moved.length);
+			}
+			moved[numMoved] = node;
+			movedFrom[numMoved++] = comm;
 		}
 	}
 }
\ No newline at end of file
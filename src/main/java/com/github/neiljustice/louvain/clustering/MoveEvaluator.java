@@ -0,0 +1,93 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.clustering;
+
+import com.github.neiljustice.louvain.graph.*;
+
+import java.util.*;
+
+/**
+ * Finds the neighbouring community that a node gains the most modularity by
+ * joining. Holds scratch space sized to the graph, so each thread evaluating
+ * moves needs its own instance; a visit allocates nothing.
+ */
+class MoveEvaluator {
+	private final Graph g;
+	private final Graph.Partitioning p;
+	// weight from the node to each neighbouring community (-1 if untouched), and
+	// the touched communities in order of first sighting
+	private final long[] neighWeights;
+	private final int[] neighComms;
+
+	MoveEvaluator(Graph.Partitioning p) {
+		this.p = p;
+		g = p.graph();
+		neighWeights = new long[g.order()];
+		neighComms = new int[g.order()];
+		Arrays.fill(neighWeights, -1);
+	}
+
+	// returns the best community for node, or -1 if no community gives a gain
+	int bestCommunity(int node) {
+		double max = 0d;
+		int best = -1;
+		int numNeighComms = neighbourCommunities(node);
+
+		for (int i = 0; i < numNeighComms; i++) {
+			int community = neighComms[i];
+			double inc = deltaModularity(node, neighWeights[community], community);
+			if (inc > max) {
+				max = inc;
+				best = community;
+			}
+			neighWeights[community] = -1;
+		}
+		return best;
+	}
+
+	// sums the weight from node to each neighbouring community in one scan,
+	// returning the number of communities touched
+	private int neighbourCommunities(int node) {
+		int[] communities = p.communities();
+		int count = 0;
+
+		for (long i = g.neighbourStart(node); i < g.neighbourEnd(node); i++) {
+			int neigh = g.neighbour(i);
+			int community = communities[neigh];
+			if (neighWeights[community] == -1) {
+				neighWeights[community] = 0;
+				neighComms[count++] = community;
+			}
+			if (neigh != node)
+				neighWeights[community] += g.neighbourWeight(i);
+		}
+		return count;
+	}
+
+	// change in modularity if node is moved to community
+	private double deltaModularity(int node, long dnodecomm, int community) {
+		double ctot = (double) p.totDegree(community);
+		double wdeg = (double) g.degree(node);
+		return (double) dnodecomm - ((ctot * wdeg) / g.m2());
+	}
+}
@@ -0,0 +1,276 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.clustering;
+
+import com.github.neiljustice.louvain.graph.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * Runs local-moving sweeps on a fixed pool of threads. Callers must settle()
+ * the partitioning after each sweep, and may then undo() it. Each worker logs
+ * the nodes it moves, so both cost time in proportion to the moves made rather
+ * than to the size of the graph.
+ *
+ * By default workers take batches of nodes from the shuffled order, evaluate
+ * each against the live partitioning and apply moves straight away through
+ * Partitioning.moveToCommConcurrent, so a sweep is not deterministic.
+ *
+ * In deterministic mode the nodes are greedily coloured once per layer so that
+ * no two neighbours share a colour, and the colour classes are swept one at a
+ * time: every node in a class is evaluated against the same state, then all
+ * the chosen moves are applied. Nodes of one class cannot affect each other's
+ * edges, and total degrees are integer sums, so the result does not depend on
+ * the number of threads or on scheduling.
+ *
+ * A sweep ends early once the stop condition holds: workers check it between
+ * batches, or in deterministic mode between colour classes.
+ */
+class ParallelSweep {
+	private static final int BATCH_SIZE = 256;
+	private static final int MOVE = 0, EVALUATE = 1, APPLY = 2; // worker phases
+	private final int threads;
+	private final boolean deterministic;
+	private final BooleanSupplier stop;
+	private final ExecutorService executor;
+	private final AtomicInteger next = new AtomicInteger();
+	private final List<Worker> workers = new ArrayList<Worker>();
+	private Graph g;
+	private Graph.Partitioning p;
+	private int[] nodes;
+	// deterministic mode: nodes grouped by colour, start of each colour class,
+	// and the move chosen for each node of the class being swept
+	private int[] byColour;
+	private int[] colourStarts;
+	private int[] decisions;
+	// the moves of the last sweep, gathered from the workers by settle()
+	private int[] moved = new int[0];
+	private int[] previous = new int[0];
+	private int numMoved;
+	private int phase;
+	private int end; // end of the range being swept
+	private boolean stopped; // the last sweep ended early
+
+	ParallelSweep(int threads, boolean deterministic, BooleanSupplier stop) {
+		this.threads = threads;
+		this.deterministic = deterministic;
+		this.stop = stop;
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "louvain-sweep");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	// prepares a worker per thread for a new layer
+	void setPartitioning(Graph.Partitioning p, int[] nodes) {
+		this.p = p;
+		g = p.graph();
+		this.nodes = nodes;
+		workers.clear();
+		for (int i = 0; i < threads; i++) {
+			workers.add(new Worker(new MoveEvaluator(p)));
+		}
+		if (deterministic) {
+			colour();
+			decisions = new int[nodes.length];
+		}
+	}
+
+	// greedy colouring in node order, then a counting sort of the nodes by colour
+	private void colour() {
+		int[] colours = new int[g.order()];
+		int[] lastSeen = new int[g.order() + 1]; // colour -> last node it was forbidden for
+		Arrays.fill(colours, -1);
+		Arrays.fill(lastSeen, -1);
+		int numColours = 0;
+
+		for (int node : nodes) {
+			for (long i = g.neighbourStart(node); i < g.neighbourEnd(node); i++) {
+				int neigh = g.neighbour(i);
+				if (neigh != node && colours[neigh] >= 0)
+					lastSeen[colours[neigh]] = node;
+			}
+			int c = 0;
+			while (lastSeen[c] == node)
+				c++;
+			colours[node] = c;
+			numColours = Math.max(numColours, c + 1);
+		}
+
+		colourStarts = new int[numColours + 1];
+		for (int node : nodes)
+			colourStarts[colours[node] + 1]++;
+		for (int c = 0; c < numColours; c++)
+			colourStarts[c + 1] += colourStarts[c];
+		int[] pos = Arrays.copyOf(colourStarts, numColours);
+		byColour = new int[nodes.length];
+		for (int node : nodes)
+			byColour[pos[colours[node]]++] = node;
+	}
+
+	// visits every node once unless stopped, returning the number of moves made
+	int sweep() {
+		stopped = false;
+		for (Worker w : workers)
+			w.numMoved = 0;
+		if (!deterministic) {
+			int moves = run(MOVE, 0, nodes.length);
+			stopped = next.get() < nodes.length;
+			return moves;
+		}
+
+		int moves = 0;
+		for (int c = 0; c < colourStarts.length - 1; c++) {
+			if (stop.getAsBoolean()) {
+				stopped = true;
+				break;
+			}
+			run(EVALUATE, colourStarts[c], colourStarts[c + 1]);
+			moves += run(APPLY, colourStarts[c], colourStarts[c + 1]);
+		}
+		return moves;
+	}
+
+	// runs a phase over nodes [start, end), inline if the range is small
+	private int run(int phase, int start, int end) {
+		this.phase = phase;
+		this.end = end;
+		next.set(start);
+		if (end - start <= BATCH_SIZE)
+			return workers.get(0).call();
+
+		int moves = 0;
+		try {
+			for (Future<Integer> f : executor.invokeAll(workers)) {
+				moves += f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new Error("interrupted during sweep");
+		} catch (ExecutionException e) {
+			throw new Error("sweep failed", e.getCause());
+		}
+		return moves;
+	}
+
+	// brings the partitioning back in line after a sweep
+	void settle() {
+		numMoved = 0;
+		for (Worker w : workers)
+			numMoved += w.numMoved;
+		if (moved.length < numMoved) {
+			moved = new int[numMoved];
+			previous = new int[numMoved];
+		}
+		int i = 0;
+		for (Worker w : workers) {
+			System.arraycopy(w.moved, 0, moved, i, w.numMoved);
+			System.arraycopy(w.previous, 0, previous, i, w.numMoved);
+			i += w.numMoved;
+		}
+		p.settle(moved, previous, numMoved, executor, threads);
+	}
+
+	// moves the nodes of the last settled sweep back, newest first
+	void undo() {
+		for (int i = numMoved - 1; i >= 0; i--)
+			p.moveToComm(moved[i], previous[i]);
+		numMoved = 0;
+	}
+
+	boolean stopped() {
+		return stopped;
+	}
+
+	void shutdown() {
+		executor.shutdownNow();
+	}
+
+	class Worker implements Callable<Integer> {
+		private final MoveEvaluator evaluator;
+		private int[] moved = new int[BATCH_SIZE]; // nodes moved this sweep
+		private int[] previous = new int[BATCH_SIZE]; // and their communities before
+		private int numMoved;
+
+		Worker(MoveEvaluator evaluator) {
+			this.evaluator = evaluator;
+		}
+
+		public Integer call() {
+			int moves = 0;
+			int start;
+
+			// a colour class is always finished, so that no stale decision is applied
+			while ((phase != MOVE || !stop.getAsBoolean()) && (start = next.getAndAdd(BATCH_SIZE)) < end) {
+				int batchEnd = Math.min(start + BATCH_SIZE, end);
+				for (int i = start; i < batchEnd; i++) {
+					if (phase == EVALUATE) {
+						decisions[i] = evaluator.bestCommunity(byColour[i]);
+					} else if (phase == APPLY) {
+						int node = byColour[i];
+						if (decisions[i] >= 0 && decisions[i] != p.community(node)) {
+							log(node, p.community(node));
+							p.moveToCommConcurrent(node, decisions[i]);
+							moves++;
+						}
+					} else if (move(nodes[i])) {
+						moves++;
+					}
+				}
+			}
+			return moves;
+		}
+
+		private boolean move(int node) {
+			int own = p.community(node);
+			int best = evaluator.bestCommunity(node);
+			if (best < 0 || best == own)
+				return false;
+			// two singletons may otherwise swap communities with each other forever
+			if (isSingleton(own) && isSingleton(best) && best > own)
+				return false;
+			log(node, own);
+			p.moveToCommConcurrent(node, best);
+			return true;
+		}
+
+		private void log(int node, int comm) {
+			if (numMoved == moved.length) {
+				moved = Arrays.copyOf(moved, numMoved * 2);
+				previous = Arrays.copyOf(previous, numMoved * 2);
+			}
+			moved[numMoved] = node;
+			previous[numMoved++] = comm;
+		}
+
+		private boolean isSingleton(int comm) {
+			return p.community(comm) == comm && p.totDegree(comm) == g.degree(comm);
+		}
+	}
+}
@@ -23,45 +23,173 @@ SOFTWARE. */
 
 package com.github.neiljustice.louvain.clustering;
 
+import com.github.neiljustice.louvain.util.IntArray;
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
 import java.util.*;
-import com.github.neiljustice.louvain.file.FileLoader;
 
+/**
+ * Reads a file written by PartitionWriter, in either format. A binary file is
+ * memory-mapped and its layers are left in the mapping: layer() and
+ * community() read them in place, and run() copies a layer onto the heap only
+ * when it is first asked for. A text file is parsed from a mapping of it
+ * straight into one int array per layer, with no String per line.
+ */
 public class PartitionReader implements Clusterer {
-  private final String del = ":";
-  private final String filename;
-  private final int order;
-  private final int layers;
-  private final List<int[]> communities = new ArrayList<>();
-  private final List<String> data;
+  private static final int REGION = 1 << 30; // bytes of text mapped at once
+  private final Path path;
+  private int order;
+  private int layers;
+  private IntArray[] columns; // community of each node, per layer
+  private int[][] heap; // the same on the heap: parsed text, or copied when asked for
+  private final List<int[]> communities;
   
   public PartitionReader(String filename) {
-    this.filename = filename;
-    data = FileLoader.readFile(filename);
-    order = data.size();
-    layers = data.get(0).split(del).length - 1; // first col is node num.
-    reconstruct();
+    path = Paths.get(filename);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (isBinary(channel))
+        map(channel);
+      else
+        parse(channel);
+    } catch (NoSuchFileException e) {
+      throw new Error("file not found: " + path);
+    } catch (IOException e) {
+      throw new Error("IO error");
+    }
+    if (heap == null)
+      heap = new int[layers][];
+    communities = new Layers();
+  }
+  
+  private static boolean isBinary(FileChannel channel) throws IOException {
+    if (channel.size() < PartitionWriter.HEADER_BYTES)
+      return false;
+    ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, 4).order(ByteOrder.LITTLE_ENDIAN);
+    return header.getInt() == PartitionWriter.MAGIC;
   }
   
-  private void reconstruct() {
+  private void map(FileChannel channel) throws IOException {
+    ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, PartitionWriter.HEADER_BYTES)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    header.getInt();
+    int version = header.getInt();
+    if (version != PartitionWriter.VERSION)
+      throw new Error("unsupported partition file version: " + version);
+    order = header.getInt();
+    layers = header.getInt();
+    if (PartitionWriter.HEADER_BYTES + 4L * order * layers > channel.size())
+      throw new Error("truncated partition file: " + path);
+    
+    columns = new IntArray[layers];
     for (int layer = 0; layer < layers; layer++) {
-      communities.add(new int[order]);
+      columns[layer] = IntArray.map(channel, PartitionWriter.HEADER_BYTES + 4L * order * layer, order);
     }
-    
-    try {
-      for (int node = 0; node < order; node++) {
-        String[] line = data.get(node).split(del);
-        for (int layer = 0; layer < layers + 0; layer++) {
-          int comm = Integer.parseInt(line[layer + 1]);
-          communities.get(layer)[node] = comm;
-        }
+  }
+  
+  // one pass to count the lines and columns, and one to parse them
+  private void parse(FileChannel channel) throws IOException {
+    long size = channel.size();
+    order = 0;
+    layers = 0;
+    byte last = '\n';
+    for (long pos = 0; pos < size; pos += REGION) {
+      MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(REGION, size - pos));
+      while (buf.hasRemaining()) {
+        last = buf.get();
+        if (last == '\n')
+          order++;
+        else if (last == ':' && order == 0)
+          layers++; // first col is node num.
       }
-    } catch (NumberFormatException e) {
-      e.printStackTrace();
     }
+    if (last != '\n')
+      order++;
+    
+    heap = new int[layers][order];
+    TextParser parser = new TextParser();
+    for (long pos = 0; pos < size; pos += REGION) {
+      MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(REGION, size - pos));
+      while (buf.hasRemaining())
+        parser.accept(buf.get());
+    }
+    if (last != '\n')
+      parser.accept((byte) '\n');
+    
+    columns = new IntArray[layers];
+    for (int layer = 0; layer < layers; layer++) {
+      columns[layer] = IntArray.wrap(heap[layer]);
+    }
+  }
+  
+  public int order() {
+    return order;
+  }
+  
+  public int layers() {
+    return layers;
+  }
+  
+  // a layer's communities, read in place from a binary file's mapping
+  public IntArray layer(int layer) {
+    return columns[layer];
+  }
+  
+  public int community(int layer, int node) {
+    return columns[layer].get(node);
   }
   
   @Override
   public List<int[]> run() {
     return communities;
   }
-}
\ No newline at end of file
+  
+  // fills heap from the bytes of the text, a line per node
+  class TextParser {
+    private int node = 0, field = 0, value = 0;
+    private boolean negative = false, digits = false;
+    
+    void accept(byte b) {
+      if (b >= '0' && b <= '9') {
+        value = value * 10 + (b - '0');
+        digits = true;
+      } else if (b == '-' && !digits && !negative) {
+        negative = true;
+      } else if (b == ':' || b == '\n') {
+        if (!digits || field > layers || (b == '\n' && field != layers))
+          throw new Error("malformed partition file at line " + (node + 1) + ": " + path);
+        if (field > 0)
+          heap[field - 1][node] = negative ? -value : value;
+        field++;
+        value = 0;
+        negative = digits = false;
+        if (b == '\n') {
+          node++;
+          field = 0;
+        }
+      } else if (b != '\r') {
+        throw new Error("malformed partition file at line " + (node + 1) + ": " + path);
+      }
+    }
+  }
+  
+  // the layers as int arrays, copied out of a mapping when first asked for
+  class Layers extends AbstractList<int[]> {
+    
+    @Override
+    public int size() {
+      return layers;
+    }
+    
+    @Override
+    public synchronized int[] get(int layer) {
+      if (heap[layer] == null) {
+        int[] a = new int[order];
+        columns[layer].get(0, a, 0, order);
+        heap[layer] = a;
+      }
+      return heap[layer];
+    }
+  }
+}
@@ -23,56 +23,112 @@ SOFTWARE. */
 
 package com.github.neiljustice.louvain.clustering;
 
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
-import java.nio.charset.Charset;
-import java.io.IOException;
 import java.util.*;
 
 /** 
  * Writes the community of each node in each layer to a file.
+ *
+ * write() gives one line per node, "node:comm0:comm1:...", formatted straight
+ * into a byte buffer as it is streamed out. writeBinary() gives a compact file
+ * that PartitionReader maps rather than parses. All values are little-endian:
+ *
+ * <pre>
+ * int   magic ("LVNP"), version, order, layers
+ * int[] the community of each node (order), once per layer
+ * </pre>
  */
 public class PartitionWriter {
-  private final String del = ":";
+  static final int MAGIC = 0x504E564C; // "LVNP" read little-endian
+  static final int VERSION = 1;
+  static final int HEADER_BYTES = 16;
+  private static final int BUFFER_BYTES = 1 << 16;
+  private final byte del = ':';
   private final String dir;
-  private int order;
-  private int layers;
-  private List<int[]> communities;
   
   public PartitionWriter(String dir) {
     this.dir = dir;
   }
   
   public void write(List<int[]> communities, String filename) {
-    this.communities = communities;
-    order = communities.get(0).length;
-    layers = communities.size();
-    writeOut(filename);
-  }
-  
-  private List<String> prepareData() {
-    List<String> data = new ArrayList<String>();
+    int order = communities.get(0).length;
+    int layers = communities.size();
+    int[][] columns = communities.toArray(new int[0][]);
+    byte[] buf = new byte[BUFFER_BYTES];
+    int lineBytes = 12 * (layers + 1); // enough for the longest line
     
-    for (int node = 0; node < order; node++) {
-      StringBuilder builder = new StringBuilder();
-      builder.append(node);
-      for (int layer = 0; layer < layers; layer++) {
-        builder.append(del);
-        builder.append(communities.get(layer)[node]);
+    try (OutputStream out = Files.newOutputStream(Paths.get(dir + filename))) {
+      int pos = 0;
+      for (int node = 0; node < order; node++) {
+        if (pos + lineBytes > buf.length) {
+          out.write(buf, 0, pos);
+          pos = 0;
+          if (lineBytes > buf.length)
+            buf = new byte[lineBytes];
+        }
+        pos = putInt(buf, pos, node);
+        for (int layer = 0; layer < layers; layer++) {
+          buf[pos++] = del;
+          pos = putInt(buf, pos, columns[layer][node]);
+        }
+        buf[pos++] = '\n';
       }
-      data.add(builder.toString());
+      out.write(buf, 0, pos);
+    }
+    catch(IOException e) {
+      e.printStackTrace();
     }
-    return data;
   }
   
-  private void writeOut(String filename) {
-    Path filepath = Paths.get(dir + filename);
-    List<String> data = prepareData();
+  public void writeBinary(List<int[]> communities, String filename) {
+    int order = communities.get(0).length;
+    int layers = communities.size();
+    ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    buf.putInt(MAGIC).putInt(VERSION).putInt(order).putInt(layers);
     
-    try {
-      Files.write(filepath, data, Charset.forName("UTF-8"));
+    try (FileChannel channel = FileChannel.open(Paths.get(dir + filename), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      for (int layer = 0; layer < layers; layer++) {
+        int[] column = communities.get(layer);
+        if (column.length != order)
+          throw new Error("layer " + layer + " has " + column.length + " nodes, not " + order);
+        for (int node = 0; node < order; node++) {
+          if (!buf.hasRemaining())
+            flush(channel, buf);
+          buf.putInt(column[node]);
+        }
+      }
+      flush(channel, buf);
     }
     catch(IOException e) {
       e.printStackTrace();
     }
-  }  
-}
\ No newline at end of file
+  }
+  
+  private static void flush(FileChannel channel, ByteBuffer buf) throws IOException {
+    ((Buffer) buf).flip(); // Buffer casts keep the bytecode runnable on Java 8
+    while (buf.hasRemaining())
+      channel.write(buf);
+    ((Buffer) buf).clear();
+  }
+  
+  // writes n in decimal at buf[pos], returning the position after it
+  private static int putInt(byte[] buf, int pos, int n) {
+    long v = n;
+    if (v < 0) {
+      buf[pos++] = '-';
+      v = -v;
+    }
+    int end = pos;
+    for (long rest = v; rest >= 10; rest /= 10)
+      end++;
+    for (int i = end; i >= pos; i--) {
+      buf[i] = (byte) ('0' + v % 10);
+      v /= 10;
+    }
+    return end + 1;
+  }
+}
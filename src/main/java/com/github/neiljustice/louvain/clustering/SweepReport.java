@@ -0,0 +1,68 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.clustering;
+
+/**
+ * What one local moving sweep of a LouvainDetector run did.
+ */
+public class SweepReport {
+	private final int layer;
+	private final int sweep; // from 1 on each layer
+	private final int moves;
+	private final int activeNodes; // nodes visited
+	private final double modularity;
+	private final long nanos;
+
+	SweepReport(int layer, int sweep, int moves, int activeNodes, double modularity, long nanos) {
+		this.layer = layer;
+		this.sweep = sweep;
+		this.moves = moves;
+		this.activeNodes = activeNodes;
+		this.modularity = modularity;
+		this.nanos = nanos;
+	}
+
+	public int layer() {
+		return layer;
+	}
+
+	public int sweep() {
+		return sweep;
+	}
+
+	public int moves() {
+		return moves;
+	}
+
+	public int activeNodes() {
+		return activeNodes;
+	}
+
+	public double modularity() {
+		return modularity;
+	}
+
+	public long nanos() {
+		return nanos;
+	}
+}
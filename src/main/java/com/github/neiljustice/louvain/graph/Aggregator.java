@@ -0,0 +1,196 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.graph;
+
+import com.github.neiljustice.louvain.util.IntArray;
+import com.github.neiljustice.louvain.util.LongArray;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Builds the CSR arrays of a community graph straight from a flat array giving
+ * the coarse node of each community. The nodes of the fine graph are bucketed
+ * by coarse node with a counting sort, and the coarse nodes are split into
+ * chunks of roughly equal edge counts that are aggregated on a thread pool with
+ * a dense scratch array, in two passes: the first counts the distinct
+ * neighbours and sums the degree of each coarse node, and once the offsets are
+ * known, the second writes each row straight into its place in the final
+ * arrays, which are off the heap if asked. No edge is buffered in between.
+ */
+class Aggregator {
+	private final Graph g;
+	private final int[] coarseNodes; // coarse node of each node of g
+	private final int order; // of the coarse graph
+	private int[] memberStarts, members;
+	private final Queue<Scratch> scratchPool = new ConcurrentLinkedQueue<Scratch>();
+
+	IntArray targets;
+	LongArray weights; // 64-bit if the coarse graph is large
+	long[] offsets, degrees; // longs, which the builder narrows for small graphs
+	long sizeDbl;
+	boolean large;
+
+	Aggregator(Graph g, int[] communities, int[] commToNode, int order) {
+		this.g = g;
+		this.order = order;
+		coarseNodes = new int[g.order()];
+		for (int n = 0; n < g.order(); n++) {
+			coarseNodes[n] = commToNode[communities[n]];
+		}
+	}
+
+	// large forces 64-bit weights; so does a large g, or a total weight past an int
+	void run(int threads, boolean offHeap, boolean large) {
+		bucketMembers();
+		List<Chunk> chunks = split(threads == 1 ? 1 : threads * 4);
+		degrees = new long[order];
+		offsets = new long[order + 1];
+
+		ExecutorService executor = threads == 1 ? null : Executors.newFixedThreadPool(threads);
+		try {
+			runAll(executor, chunks);
+			for (int c = 0; c < order; c++) {
+				offsets[c + 1] += offsets[c];
+				sizeDbl += degrees[c];
+			}
+			this.large = large || g.isLarge() || sizeDbl > Integer.MAX_VALUE || offsets[order] > Integer.MAX_VALUE;
+			targets = IntArray.allocate(offsets[order], offHeap);
+			weights = LongArray.allocate(offsets[order], offHeap, this.large);
+			for (Chunk chunk : chunks)
+				chunk.write = true;
+			runAll(executor, chunks);
+		} finally {
+			if (executor != null)
+				executor.shutdown();
+		}
+	}
+
+	private void runAll(ExecutorService executor, List<Chunk> chunks) {
+		if (executor == null) {
+			for (Chunk chunk : chunks)
+				chunk.call();
+			return;
+		}
+		try {
+			for (Future<Chunk> f : executor.invokeAll(chunks)) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new Error("interrupted during coarse-graining");
+		} catch (ExecutionException e) {
+			throw new Error("coarse-graining failed", e.getCause());
+		}
+	}
+
+	// counting sort of the nodes of g by coarse node
+	private void bucketMembers() {
+		memberStarts = new int[order + 1];
+		members = new int[g.order()];
+		for (int n = 0; n < g.order(); n++)
+			memberStarts[coarseNodes[n] + 1]++;
+		for (int c = 0; c < order; c++)
+			memberStarts[c + 1] += memberStarts[c];
+		int[] pos = Arrays.copyOf(memberStarts, order);
+		for (int n = 0; n < g.order(); n++)
+			members[pos[coarseNodes[n]]++] = n;
+	}
+
+	// cuts the coarse nodes into ranges whose members hold similar edge counts
+	private List<Chunk> split(int numChunks) {
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		long target = Math.max(1, g.numEdges() / numChunks);
+		int from = 0;
+		long edges = 0;
+		for (int c = 0; c < order; c++) {
+			for (int i = memberStarts[c]; i < memberStarts[c + 1]; i++)
+				edges += g.numNeighbours(members[i]);
+			if (edges >= target || c == order - 1) {
+				chunks.add(new Chunk(from, c + 1));
+				from = c + 1;
+				edges = 0;
+			}
+		}
+		return chunks;
+	}
+
+	class Scratch {
+		final long[] weightTo = new long[order]; // -1 where untouched
+		final int[] touched = new int[order];
+
+		Scratch() {
+			Arrays.fill(weightTo, -1);
+		}
+	}
+
+	// the rows of coarse nodes [from, to): counted, or once write is set, written
+	class Chunk implements Callable<Chunk> {
+		final int from, to;
+		boolean write;
+
+		Chunk(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		public Chunk call() {
+			Scratch scratch = scratchPool.poll();
+			if (scratch == null)
+				scratch = new Scratch();
+			long[] weightTo = scratch.weightTo;
+			int[] touched = scratch.touched;
+
+			for (int c = from; c < to; c++) {
+				int count = 0;
+				for (int m = memberStarts[c]; m < memberStarts[c + 1]; m++) {
+					int node = members[m];
+					for (long i = g.neighbourStart(node); i < g.neighbourEnd(node); i++) {
+						int t = coarseNodes[g.neighbour(i)];
+						if (weightTo[t] == -1) {
+							weightTo[t] = 0;
+							touched[count++] = t;
+						}
+						weightTo[t] += g.neighbourWeight(i);
+					}
+				}
+				if (write) {
+					Arrays.sort(touched, 0, count);
+					long pos = offsets[c];
+					for (int i = 0; i < count; i++) {
+						targets.set(pos + i, touched[i]);
+						weights.set(pos + i, weightTo[touched[i]]);
+					}
+				} else {
+					offsets[c + 1] = count;
+				}
+				for (int i = 0; i < count; i++) {
+					if (!write)
+						degrees[c] += weightTo[touched[i]];
+					weightTo[touched[i]] = -1;
+				}
+			}
+			scratchPool.offer(scratch);
+			return this;
+		}
+	}
+}
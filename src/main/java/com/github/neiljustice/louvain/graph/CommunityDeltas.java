@@ -0,0 +1,100 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.graph;
+
+/**
+ * Changes to the internal and total degrees of communities, summed by community
+ * in an open-addressing table with linear probing. Partitioning.settle() fills
+ * one per range of moved nodes, then adds them together.
+ */
+class CommunityDeltas {
+	private int[] slots; // community + 1 in each used slot, 0 if empty
+	private long[] intDeltas;
+	private long[] totDeltas;
+	private int size = 0;
+
+	CommunityDeltas(int expected) {
+		slots = new int[tableSize(expected)];
+		intDeltas = new long[slots.length];
+		totDeltas = new long[slots.length];
+	}
+
+	// a power of two at least twice the number of communities, so the load stays <= 1/2
+	private static int tableSize(int capacity) {
+		return Integer.highestOneBit(Math.max(16, capacity) * 2 - 1) * 2;
+	}
+
+	void add(int comm, long intDelta, long totDelta) {
+		int mask = slots.length - 1;
+		int i = (comm * 0x9E3779B9) & mask;
+		while (slots[i] != 0 && slots[i] != comm + 1)
+			i = (i + 1) & mask;
+		if (slots[i] == 0) {
+			slots[i] = comm + 1;
+			if (++size * 2 > slots.length) {
+				grow();
+				add(comm, intDelta, totDelta);
+				return;
+			}
+		}
+		intDeltas[i] += intDelta;
+		totDeltas[i] += totDelta;
+	}
+
+	void addAll(CommunityDeltas other) {
+		for (int i = 0; i < other.slots.length; i++) {
+			if (other.slots[i] != 0)
+				add(other.slots[i] - 1, other.intDeltas[i], other.totDeltas[i]);
+		}
+	}
+
+	private void grow() {
+		int[] oldSlots = slots;
+		long[] oldInt = intDeltas, oldTot = totDeltas;
+		slots = new int[oldSlots.length * 2];
+		intDeltas = new long[slots.length];
+		totDeltas = new long[slots.length];
+		size = 0;
+		for (int i = 0; i < oldSlots.length; i++) {
+			if (oldSlots[i] != 0)
+				add(oldSlots[i] - 1, oldInt[i], oldTot[i]);
+		}
+	}
+
+	// the table is walked by slot: 0 where a slot is empty, else community + 1
+	int capacity() {
+		return slots.length;
+	}
+
+	int slot(int i) {
+		return slots[i];
+	}
+
+	long intDelta(int i) {
+		return intDeltas[i];
+	}
+
+	long totDelta(int i) {
+		return totDeltas[i];
+	}
+}
@@ -0,0 +1,79 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.graph;
+
+import java.util.*;
+
+/**
+ * A batch of edge insertions and deletions, given by node id, to apply to a
+ * graph with {@link GraphBuilder#update}. Changes apply in the order given, so
+ * a later change to the same edge wins. Inserting an edge that exists sets its
+ * weight, and ids the graph does not have become new nodes.
+ */
+public class EdgeBatch {
+	private long[] ids1 = new long[16], ids2 = new long[16];
+	private int[] weights = new int[16]; // 0 marks a deletion
+	private int size = 0;
+
+	public void insert(long id1, long id2, int weight) {
+		if (weight <= 0)
+			throw new IllegalArgumentException("edge weight must be positive: " + weight);
+		add(id1, id2, weight);
+	}
+
+	public void delete(long id1, long id2) {
+		add(id1, id2, 0);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long id1(int change) {
+		return ids1[change];
+	}
+
+	public long id2(int change) {
+		return ids2[change];
+	}
+
+	public int weight(int change) {
+		return weights[change];
+	}
+
+	public boolean isDeletion(int change) {
+		return weights[change] == 0;
+	}
+
+	private void add(long id1, long id2, int weight) {
+		if (size == ids1.length) {
+			ids1 = Arrays.copyOf(ids1, size * 2);
+			ids2 = Arrays.copyOf(ids2, size * 2);
+			weights = Arrays.copyOf(weights, size * 2);
+		}
+		ids1[size] = id1;
+		ids2[size] = id2;
+		weights[size] = weight;
+		size++;
+	}
+}
@@ -0,0 +1,488 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.graph;
+
+import com.github.neiljustice.louvain.util.IntArray;
+import com.github.neiljustice.louvain.util.LongArray;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Loads a graph from a text edge list, one "n1,n2,weight" edge per line (see
+ * the graphs in src/test/resources). Fields may also be separated by spaces or
+ * tabs, a missing weight counts as 1, and lines starting with '#' are skipped.
+ *
+ * The file is memory-mapped and its bytes are parsed in place, without creating
+ * Strings. With more than one thread the file is cut into byte ranges that end
+ * on newlines, and the ranges are parsed concurrently into separate buffers.
+ * With setOffHeap those buffers, like the graph built from them, are direct
+ * buffers, so a file may hold more edges than fit on the heap.
+ *
+ * Ids are 64-bit integers. If they are exactly 0 to n - 1, each with an edge,
+ * nodes are numbered by id. Otherwise the distinct ids are numbered in
+ * ascending order, so that gaps in the ids do not become isolated nodes;
+ * finding and renumbering them is also done per range when parallel.
+ *
+ * With setStringIds the first two fields are instead any tokens without a
+ * separator, such as URLs, interned as UTF-8 bytes in a StringIdMap per range.
+ * Nodes are numbered in order of first appearance, and the graph's names()
+ * hold the ids.
+ */
+public class EdgeListLoader {
+	static final int MAX_REGION = Integer.MAX_VALUE - 4096; // largest single mapping
+	private static final int SCAN_BYTES = 1 << 16; // read at a time when aligning ranges
+	private int threads = 1;
+	private boolean offHeap = false;
+	private boolean stringIds = false;
+
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		this.threads = threads;
+	}
+
+	/* If set, parsed edges are buffered off the heap, and the graph is built there (see GraphBuilder.setOffHeap) */
+	public void setOffHeap(boolean offHeap) {
+		this.offHeap = offHeap;
+	}
+
+	/* If set, node ids are read as strings rather than numbers */
+	public void setStringIds(boolean stringIds) {
+		this.stringIds = stringIds;
+	}
+
+	public Graph load(String filename) {
+		return load(Paths.get(filename));
+	}
+
+	public Graph load(Path path) {
+		ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			List<EdgeBuffer> chunks = executor == null ? parse(channel) : parse(channel, executor);
+			return build(chunks, executor, offHeap);
+		} catch (NoSuchFileException e) {
+			throw new Error("file not found: " + path);
+		} catch (IOException e) {
+			throw new Error("IO error");
+		} finally {
+			if (executor != null)
+				executor.shutdown();
+		}
+	}
+
+	// parses the whole file on this thread, a mapped region at a time into a buffer each
+	private List<EdgeBuffer> parse(FileChannel channel) throws IOException {
+		List<EdgeBuffer> chunks = new ArrayList<EdgeBuffer>();
+		long size = channel.size();
+		long pos = 0;
+		while (pos < size) {
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAX_REGION, size - pos));
+			int end = pos + buf.limit() < size ? lastLineEnd(buf) : buf.limit();
+			if (end < 0)
+				throw new Error("line too long at byte " + pos);
+			EdgeBuffer edges = newBuffer();
+			parse(buf, 0, end, edges);
+			chunks.add(edges);
+			pos += end;
+		}
+		return chunks;
+	}
+
+	// parses newline-aligned byte ranges of the file on the executor
+	private List<EdgeBuffer> parse(final FileChannel channel, ExecutorService executor) throws IOException {
+		long size = channel.size();
+		int numRanges = (int) Math.max(threads * 4L, size / (MAX_REGION / 2) + 1);
+		long[] starts = new long[numRanges + 1];
+		starts[numRanges] = size;
+		for (int r = 1; r < numRanges; r++) {
+			starts[r] = Math.max(starts[r - 1], nextLineStart(channel, size * r / numRanges));
+		}
+
+		List<Callable<EdgeBuffer>> tasks = new ArrayList<Callable<EdgeBuffer>>();
+		for (int r = 0; r < numRanges; r++) {
+			final long start = starts[r];
+			final long len = starts[r + 1] - start;
+			if (len > MAX_REGION)
+				throw new Error("line too long at byte " + start);
+			tasks.add(new Callable<EdgeBuffer>() {
+				public EdgeBuffer call() throws IOException {
+					EdgeBuffer edges = newBuffer();
+					if (len > 0)
+						parse(channel.map(FileChannel.MapMode.READ_ONLY, start, len), 0, (int) len, edges);
+					return edges;
+				}
+			});
+		}
+		return invokeAll(executor, tasks);
+	}
+
+	private EdgeBuffer newBuffer() {
+		return new EdgeBuffer(offHeap, stringIds ? new StringIdMap() : null);
+	}
+
+	// the position after the first newline at or after pos, or the file size
+	private static long nextLineStart(FileChannel channel, long pos) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(SCAN_BYTES);
+		while (true) {
+			((Buffer) buf).clear();
+			int read = channel.read(buf, pos);
+			if (read <= 0)
+				return channel.size();
+			for (int i = 0; i < read; i++) {
+				if (buf.get(i) == '\n')
+					return pos + i + 1;
+			}
+			pos += read;
+		}
+	}
+
+	// the position after the last newline in buf, or -1 if there is none
+	static int lastLineEnd(ByteBuffer buf) {
+		for (int i = buf.limit() - 1; i >= 0; i--) {
+			if (buf.get(i) == '\n')
+				return i + 1;
+		}
+		return -1;
+	}
+
+	// parses the complete lines in buf[start, end) into edges
+	static void parse(ByteBuffer buf, int start, int end, EdgeBuffer edges) {
+		long[] fields = new long[3];
+		byte[] token = new byte[64];
+		int i = start;
+		while (i < end) {
+			int numFields = 0;
+			byte b = buf.get(i);
+			if (b == '#') {
+				while (i < end && buf.get(i) != '\n')
+					i++;
+				i++;
+				continue;
+			}
+			while (i < end && (b = buf.get(i)) != '\n') {
+				if (isSeparator(b)) {
+					i++;
+					continue;
+				}
+				if (numFields == 3)
+					throw new Error("invalid file format at byte " + i);
+				if (edges.names != null && numFields < 2) {
+					int from = i;
+					while (i < end && (b = buf.get(i)) != '\n' && !isSeparator(b))
+						i++;
+					if (i - from > token.length)
+						token = new byte[Math.max(i - from, 2 * token.length)];
+					for (int k = from; k < i; k++)
+						token[k - from] = buf.get(k);
+					fields[numFields++] = edges.names.add(token, 0, i - from);
+					continue;
+				}
+				boolean negative = b == '-';
+				if (negative)
+					i++;
+				long value = 0;
+				int digits = 0;
+				while (i < end && (b = buf.get(i)) >= '0' && b <= '9') {
+					if (value > (Long.MAX_VALUE - (b - '0')) / 10)
+						throw new Error("invalid file format: number too large at byte " + i);
+					value = value * 10 + (b - '0');
+					digits++;
+					i++;
+				}
+				if (digits == 0)
+					throw new Error("invalid file format at byte " + i);
+				if (numFields == 2 && value > Integer.MAX_VALUE)
+					throw new Error("invalid file format: weight too large at byte " + i);
+				fields[numFields++] = negative ? -value : value;
+			}
+			i++;
+			if (numFields == 0)
+				continue;
+			if (numFields == 1)
+				throw new Error("invalid file format at byte " + (i - 1));
+			edges.add(fields[0], fields[1], numFields == 3 ? (int) fields[2] : 1);
+		}
+	}
+
+	private static boolean isSeparator(byte b) {
+		return b == ',' || b == ' ' || b == '\t' || b == '\r';
+	}
+
+	static Graph build(List<EdgeBuffer> chunks, ExecutorService executor, boolean offHeap) {
+		long numEdges = 0;
+		long minId = Long.MAX_VALUE;
+		long maxId = Long.MIN_VALUE;
+		for (EdgeBuffer edges : chunks) {
+			numEdges += edges.size;
+			minId = Math.min(minId, edges.minId);
+			maxId = Math.max(maxId, edges.maxId);
+		}
+		if (numEdges == 0)
+			return new GraphBuilder(0).build();
+
+		GraphBuilder builder;
+		if (chunks.get(0).names != null) {
+			StringIdMap names = internNames(chunks, executor);
+			builder = new GraphBuilder(names.size());
+			builder.setOffHeap(offHeap);
+			builder.setNames(names);
+		} else if (isDense(chunks, minId, maxId, numEdges)) {
+			builder = new GraphBuilder((int) maxId + 1);
+			builder.setOffHeap(offHeap);
+			for (int id = 0; id <= maxId; id++) {
+				builder.addNode(id);
+			}
+		} else {
+			long[] ids = intern(chunks, executor);
+			builder = new GraphBuilder(ids.length);
+			builder.setOffHeap(offHeap);
+			for (long id : ids) {
+				builder.addNode(id);
+			}
+		}
+		for (EdgeBuffer edges : chunks) {
+			builder.insertEdgesSym(edges.n1s, edges.n2s, edges.weights, edges.size);
+		}
+		return builder.build();
+	}
+
+	// true if every id from 0 to maxId appears in some edge
+	private static boolean isDense(List<EdgeBuffer> chunks, long minId, long maxId, long numEdges) {
+		// too many ids for the edges to use them all, or for a bit set
+		if (minId != 0 || maxId >= 2 * numEdges || maxId >= Integer.MAX_VALUE - 8)
+			return false;
+		BitSet seen = new BitSet((int) maxId + 1);
+		for (EdgeBuffer edges : chunks) {
+			for (int i = 0; i < edges.size; i++) {
+				seen.set((int) edges.n1s.get(i));
+				seen.set((int) edges.n2s.get(i));
+			}
+		}
+		return seen.cardinality() == maxId + 1;
+	}
+
+	/*
+	 * Returns the distinct ids in ascending order, and rewrites every edge
+	 * buffer in terms of positions in that array. Each buffer finds its own
+	 * distinct ids and is renumbered concurrently when an executor is given.
+	 */
+	private static long[] intern(final List<EdgeBuffer> chunks, ExecutorService executor) {
+		List<Callable<long[]>> distinctTasks = new ArrayList<Callable<long[]>>();
+		for (final EdgeBuffer edges : chunks) {
+			distinctTasks.add(new Callable<long[]>() {
+				public long[] call() {
+					return distinct(edges);
+				}
+			});
+		}
+		List<long[]> distincts = executor == null ? runAll(distinctTasks) : invokeAll(executor, distinctTasks);
+		final long[] ids = mergeAll(distincts, executor);
+
+		List<Callable<long[]>> renumberTasks = new ArrayList<Callable<long[]>>();
+		for (final EdgeBuffer edges : chunks) {
+			renumberTasks.add(new Callable<long[]>() {
+				public long[] call() {
+					for (int i = 0; i < edges.size; i++) {
+						edges.n1s.set(i, Arrays.binarySearch(ids, edges.n1s.get(i)));
+						edges.n2s.set(i, Arrays.binarySearch(ids, edges.n2s.get(i)));
+					}
+					return null;
+				}
+			});
+		}
+		if (executor == null)
+			runAll(renumberTasks);
+		else
+			invokeAll(executor, renumberTasks);
+		return ids;
+	}
+
+	/*
+	 * Numbers string ids in order of first appearance, and rewrites every edge
+	 * buffer in those numbers. The ranges are in file order, so the first
+	 * range's map is already right; each later range's ids are added to it in
+	 * turn, then the buffers are renumbered concurrently when an executor is
+	 * given.
+	 */
+	private static StringIdMap internNames(List<EdgeBuffer> chunks, ExecutorService executor) {
+		StringIdMap names = chunks.get(0).names;
+		List<Callable<long[]>> renumberTasks = new ArrayList<Callable<long[]>>();
+		for (final EdgeBuffer edges : chunks.subList(1, chunks.size())) {
+			final int[] global = new int[edges.names.size()];
+			for (int n = 0; n < global.length; n++)
+				global[n] = names.add(edges.names, n);
+			renumberTasks.add(new Callable<long[]>() {
+				public long[] call() {
+					for (int i = 0; i < edges.size; i++) {
+						edges.n1s.set(i, global[(int) edges.n1s.get(i)]);
+						edges.n2s.set(i, global[(int) edges.n2s.get(i)]);
+					}
+					return null;
+				}
+			});
+		}
+		if (executor == null)
+			runAll(renumberTasks);
+		else
+			invokeAll(executor, renumberTasks);
+		return names;
+	}
+
+	// merges sorted distinct lists in pairs, each round's merges run concurrently
+	private static long[] mergeAll(List<long[]> lists, ExecutorService executor) {
+		while (lists.size() > 1) {
+			List<Callable<long[]>> merges = new ArrayList<Callable<long[]>>();
+			for (int i = 0; i < lists.size(); i += 2) {
+				final long[] a = lists.get(i);
+				final long[] b = i + 1 < lists.size() ? lists.get(i + 1) : new long[0];
+				merges.add(new Callable<long[]>() {
+					public long[] call() {
+						return merge(a, b);
+					}
+				});
+			}
+			lists = executor == null ? runAll(merges) : invokeAll(executor, merges);
+		}
+		return lists.get(0);
+	}
+
+	// the union of two sorted distinct lists
+	private static long[] merge(long[] a, long[] b) {
+		long total = (long) a.length + b.length; // an int can overflow; the union is checked below
+		long[] out = new long[(int) Math.min(total, Integer.MAX_VALUE - 8)];
+		int i = 0, j = 0, count = 0;
+		while (i < a.length || j < b.length) {
+			long next;
+			if (j == b.length || (i < a.length && a[i] < b[j]))
+				next = a[i++];
+			else if (i == a.length || b[j] < a[i])
+				next = b[j++];
+			else {
+				next = a[i++];
+				j++;
+			}
+			if (count == out.length)
+				throw new Error("too many distinct ids: over " + count);
+			out[count++] = next;
+		}
+		return count == out.length ? out : Arrays.copyOf(out, count);
+	}
+
+	// the ids in a buffer's edges, sorted without repeats, hashed so as to need
+	// memory for the distinct ids rather than for every endpoint
+	private static long[] distinct(EdgeBuffer edges) {
+		LongIdMap seen = new LongIdMap();
+		for (int i = 0; i < edges.size; i++) {
+			seen.add(edges.n1s.get(i));
+			seen.add(edges.n2s.get(i));
+		}
+		long[] ids = new long[seen.size()];
+		for (int n = 0; n < ids.length; n++)
+			ids[n] = seen.id(n);
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	private static <T> List<T> runAll(List<Callable<T>> tasks) {
+		List<T> results = new ArrayList<T>();
+		try {
+			for (Callable<T> task : tasks)
+				results.add(task.call());
+		} catch (Exception e) {
+			throw new Error("loading failed", e);
+		}
+		return results;
+	}
+
+	private static <T> List<T> invokeAll(ExecutorService executor, List<Callable<T>> tasks) {
+		List<T> results = new ArrayList<T>();
+		try {
+			for (Future<T> f : executor.invokeAll(tasks))
+				results.add(f.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new Error("interrupted while loading");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new Error("loading failed", e.getCause());
+		}
+		return results;
+	}
+
+	/**
+	 * Growable primitive arrays of the edges parsed from one mapped region, on or
+	 * off the heap. A region is under 2^31 bytes, so its edges fit an int count.
+	 * In string mode the ids are this range's numbers in names.
+	 */
+	static class EdgeBuffer {
+		private final boolean offHeap;
+		final StringIdMap names;
+		LongArray n1s, n2s;
+		IntArray weights;
+		int size = 0;
+		long minId = Long.MAX_VALUE;
+		long maxId = Long.MIN_VALUE;
+
+		EdgeBuffer(boolean offHeap, StringIdMap names) {
+			this.offHeap = offHeap;
+			this.names = names;
+			n1s = LongArray.allocate(1024, offHeap, true);
+			n2s = LongArray.allocate(1024, offHeap, true);
+			weights = IntArray.allocate(1024, offHeap);
+		}
+
+		void add(long n1, long n2, int weight) {
+			if (size == n1s.length()) {
+				long capacity = n1s.length() * 2;
+				n1s = grow(n1s, capacity);
+				n2s = grow(n2s, capacity);
+				weights = grow(weights, capacity);
+			}
+			n1s.set(size, n1);
+			n2s.set(size, n2);
+			weights.set(size, weight);
+			size++;
+			minId = Math.min(minId, Math.min(n1, n2));
+			maxId = Math.max(maxId, Math.max(n1, n2));
+		}
+
+		private LongArray grow(LongArray a, long capacity) {
+			LongArray copy = LongArray.allocate(capacity, offHeap, true);
+			for (int i = 0; i < size; i++)
+				copy.set(i, a.get(i));
+			return copy;
+		}
+
+		private IntArray grow(IntArray a, long capacity) {
+			IntArray copy = IntArray.allocate(capacity, offHeap);
+			for (int i = 0; i < size; i++)
+				copy.set(i, a.get(i));
+			return copy;
+		}
+	}
+}
@@ -25,95 +25,235 @@ package com.github.neiljustice.louvain.graph;
 
 import com.github.neiljustice.louvain.util.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
- * An undirected, weighted, unmodifiable graph data structure. (though nodes can
- * be moved between communities, and this functionality is rolled into this
- * object. )
+ * An undirected, weighted, unmodifiable graph data structure. Its nodes are
+ * assigned to communities by Partitionings, which hold all the mutable state:
+ * any number of them can be made with newPartitioning() and worked on at once,
+ * each by its own thread, so concurrent runs can share one graph. partitioning()
+ * is a default one, created when first asked for, for single-threaded use.
+ *
+ * Edges are held in compressed sparse row (CSR) form: the neighbours of node n
+ * are targets[offsets[n]] to targets[offsets[n + 1] - 1], sorted ascending, and
+ * weights[i] is the weight of the edge to targets[i]. Iterate them with
+ * {@link #neighbourStart}, {@link #neighbourEnd}, {@link #neighbour} and
+ * {@link #neighbourWeight}.
+ *
+ * The arrays, and the community degrees of the partitioning, are IntArrays or
+ * LongArrays: on the heap by default, or in direct or memory-mapped buffers for
+ * graphs too big for it (see GraphBuilder.setOffHeap and GraphFile.map).
+ * Offsets, weights and degrees are stored as ints unless the graph is large,
+ * that is its total weight or edge count needs 64 bits (see isLarge()). More
+ * than 2^31 - 9 directed edges only fit off the heap, where GraphBuilder also
+ * buffers the edges added to it, and can be stored with GraphFile and mapped
+ * back.
  */
 public class Graph {
-	private final SparseIntMatrix matrix; // adjacency matrix with weight info
-	private final ArrayList<Integer>[] adjList; // adjacency list
+	private static final int BATCH_SIZE = 256; // fewest moved nodes settled per task
+	private final LongArray offsets; // start of each node's row in targets
+	private final IntArray targets; // neighbour of each edge
+	private final LongArray weights; // weight of each edge
 	private final int layer; // if > 0, its a coarse-grained community graph
 
-	private final int[] degrees; // degree of each node
+	private final LongArray degrees; // degree of each node
 	private final int order; // no. of nodes
-	private final int size; // sum of edge weights
+	private final long size; // sum of edge weights
 	private final double m2; // sum of edge weights * 2
-	private final Partitioning partitioning;
+	private Partitioning partitioning; // the default, created lazily
 	
-	private final Map<Integer, Integer> index, reverseIndex;
+	private final LongIdMap ids; // original id of each node; coarse graphs have none
+	private final StringIdMap names; // string ids instead, if the nodes have those
+	private Map<Integer, Integer> index, reverseIndex; // boxed copies, made if asked for
 
 	public Graph(GraphBuilder builder) {
-		matrix = builder.matrix();
-		adjList = builder.adjList();
+		offsets = builder.offsets();
+		targets = builder.targets();
+		weights = builder.weights();
 		degrees = builder.degrees();
 		order = builder.order();
 		size = builder.sizeDbl() / 2;
 		m2 = (double) builder.sizeDbl();
 		layer = builder.layer();
-		index = builder.index();
-		reverseIndex = builder.reverseIndex();
+		ids = builder.ids();
+		names = builder.names();
+	}
+
+	// a new partitioning with every node in its own community
+	public Partitioning newPartitioning() {
+		return new Partitioning();
+	}
+
+	// a new partitioning with the given community of each node
+	public Partitioning newPartitioning(int[] communities) {
+		Partitioning p = new Partitioning();
+		p.load(communities);
+		return p;
+	}
 
-		partitioning = new Partitioning();
+	/**
+	 * A partitioning carried over from one of an earlier version of this graph,
+	 * as GraphBuilder.update() makes them: nodes keep their communities and new
+	 * nodes start alone. Only the rows of the touched nodes may differ between
+	 * the two graphs, and each must be listed once; the community degrees and
+	 * modularity are patched from those rows alone.
+	 */
+	public Partitioning newPartitioning(Partitioning previous, int[] touched) {
+		return new Partitioning(previous, touched);
 	}
 
+	/**
+	 * The community of each node of the graph, and the community degrees and
+	 * modularity that follow from it. Not thread-safe except where stated.
+	 */
 	public class Partitioning {
-		private final SparseIntMatrix cmatrix; // weights between communities
+		private final Object[] locks = new Object[64]; // stripes for concurrent moves
+		// weights between communities. Not maintained during moves: it is built
+		// in one pass over the edges when first asked for, and dropped by moveToComm.
+		private SparseIntMatrix cmatrix;
 		private int numComms; // total no. of communities
 		private final int[] communities; // comm of each node
-		private final int[] totDegrees; // total degree of community
-		private final int[] intDegrees; // int. degree of community
+		private final LongArray totDegrees; // total degree of community
+		private final LongArray intDegrees; // int. degree of community
+		// running sums behind modularity(), kept exact by moveToComm. Squared
+		// degrees of large graphs can pass 2^63, so those go in a double.
+		private long sumIntDegrees; // sum of intDegrees
+		private long sumTotDegreesSq; // sum of squared totDegrees
+		private double sumTotDegreesSqLarge; // the same, for large graphs
+		private int[] movedFrom; // scratch for settle(): previous comm of a moved node, else -1
 
 		public Partitioning() {
-			cmatrix = new SparseIntMatrix(matrix);
 			communities = new int[order];
-			totDegrees = new int[order];
-			intDegrees = new int[order];
+			totDegrees = LongArray.allocate(order, isOffHeap(), isLarge());
+			intDegrees = LongArray.allocate(order, isOffHeap(), isLarge());
 			numComms = order;
+			for (int i = 0; i < locks.length; i++) {
+				locks[i] = new Object();
+			}
 
 			for (int i = 0; i < order; i++) {
 				communities[i] = i;
-				totDegrees[i] = degree(i);
-				intDegrees[i] = matrix.get(i, i); // catches self-edges
+				totDegrees.set(i, degree(i));
+				intDegrees.set(i, weight(i, i)); // catches self-edges
+				sumIntDegrees += intDegrees.get(i);
+				addTotDegreeSq(totDegrees.get(i), 1);
 			}
 		}
 
+		private Partitioning(Partitioning previous, int[] touched) {
+			Graph old = previous.graph();
+			if (old.order() > order)
+				throw new IllegalArgumentException("previous graph is bigger: " + old.order() + " > " + order);
+			communities = new int[order];
+			totDegrees = LongArray.allocate(order, isOffHeap(), isLarge());
+			intDegrees = LongArray.allocate(order, isOffHeap(), isLarge());
+			for (int i = 0; i < locks.length; i++) {
+				locks[i] = new Object();
+			}
+			System.arraycopy(previous.communities, 0, communities, 0, old.order());
+			LongArray.copy(previous.totDegrees, 0, totDegrees, 0, old.order());
+			LongArray.copy(previous.intDegrees, 0, intDegrees, 0, old.order());
+			numComms = previous.numComms + order - old.order();
+			sumIntDegrees = previous.sumIntDegrees;
+			sumTotDegreesSq = previous.sumTotDegreesSq;
+			sumTotDegreesSqLarge = previous.sumTotDegreesSqLarge;
+			boolean resum = isLarge() != old.isLarge(); // the squares are kept elsewhere
+
+			for (int node = old.order(); node < order; node++) {
+				communities[node] = node;
+				totDegrees.set(node, degree(node));
+				intDegrees.set(node, weight(node, node));
+				sumIntDegrees += intDegrees.get(node);
+				addTotDegreeSq(totDegrees.get(node), 1);
+			}
+			for (int node : touched) {
+				if (node >= old.order())
+					continue; // new, so already alone
+				int comm = communities[node];
+				long intDelta = 0;
+				for (long i = old.neighbourStart(node); i < old.neighbourEnd(node); i++) {
+					if (communities[old.neighbour(i)] == comm)
+						intDelta -= old.neighbourWeight(i);
+				}
+				for (long i = offsets.get(node); i < offsets.get(node + 1); i++) {
+					if (communities[targets.get(i)] == comm)
+						intDelta += weights.get(i);
+				}
+				addTotDegreeSq(totDegrees.get(comm), -1);
+				totDegrees.add(comm, degree(node) - old.degree(node));
+				intDegrees.add(comm, intDelta);
+				sumIntDegrees += intDelta;
+				addTotDegreeSq(totDegrees.get(comm), 1);
+			}
+
+			if (resum) {
+				sumIntDegrees = 0;
+				sumTotDegreesSq = 0;
+				sumTotDegreesSqLarge = 0d;
+				for (int n = 0; n < order; n++) {
+					sumIntDegrees += intDegrees.get(n);
+					addTotDegreeSq(totDegrees.get(n), 1);
+				}
+			}
+		}
+
+		/**
+		 * Loads a partition set, in one pass over the edges. Communities are
+		 * numbered by node, so each must be below order().
+		 */
+		public void load(int[] partitioning) {
+			if (partitioning.length != order) {
+				throw new Error("new partitioning size-graph size mismatch: " + order + " != " + partitioning.length);
+			}
+			for (int node = 0; node < order; node++) {
+				rangeCheck(partitioning[node]);
+			}
+			System.arraycopy(partitioning, 0, communities, 0, order);
+			refresh();
+		}
+
+		public Graph graph() {
+			return Graph.this;
+		}
+
 		public void moveToComm(int node, int newComm) {
 			rangeCheck(node);
 			rangeCheck(newComm);
 
 			int oldComm = community(node);
-			int oldTotDegree = totDegree(oldComm);
-			int oldNewTotDegree = totDegree(newComm);
+			long oldTotDegree = totDegree(oldComm);
+			long oldNewTotDegree = totDegree(newComm);
 			if (oldComm == newComm)
 				return;
 
+			sumIntDegrees -= intDegrees.get(oldComm) + intDegrees.get(newComm);
+			addTotDegreeSq(oldTotDegree, -1);
+			addTotDegreeSq(oldNewTotDegree, -1);
+
+			cmatrix = null;
 			communities[node] = newComm;
-			totDegrees[oldComm] -= degree(node);
-			totDegrees[newComm] += degree(node);
-			ArrayList<Integer> neighbours = neighbours(node);
-			for (int i = 0; i < neighbours.size(); i++) {
-				int neighbour = neighbours.get(i);
-				int weight = weight(node, neighbour);
+			totDegrees.add(oldComm, -degree(node));
+			totDegrees.add(newComm, degree(node));
+			for (long i = offsets.get(node); i < offsets.get(node + 1); i++) {
+				int neighbour = targets.get(i);
+				long weight = weights.get(i);
 				if (neighbour != node) {
-					cmatrix.add(newComm, community(neighbour), weight);
-					cmatrix.add(community(neighbour), newComm, weight);
-					cmatrix.add(oldComm, community(neighbour), -weight);
-					cmatrix.add(community(neighbour), oldComm, -weight);
-					if (community(neighbour) == newComm) {
-						intDegrees[newComm] += (weight * 2);
+					int neighComm = communities[neighbour];
+					if (neighComm == newComm) {
+						intDegrees.add(newComm, weight * 2);
 					}
-					if (community(neighbour) == oldComm) {
-						intDegrees[oldComm] -= (weight * 2);
+					if (neighComm == oldComm) {
+						intDegrees.add(oldComm, -weight * 2);
 					}
 				}
 			}
-			int selfWeight = weight(node, node);
-			cmatrix.add(newComm, newComm, selfWeight);
-			cmatrix.add(oldComm, oldComm, -selfWeight);
-			intDegrees[oldComm] -= selfWeight;
-			intDegrees[newComm] += selfWeight;
+			long selfWeight = weight(node, node);
+			intDegrees.add(oldComm, -selfWeight);
+			intDegrees.add(newComm, selfWeight);
+
+			sumIntDegrees += intDegrees.get(oldComm) + intDegrees.get(newComm);
+			addTotDegreeSq(totDegrees.get(oldComm), 1);
+			addTotDegreeSq(totDegrees.get(newComm), 1);
 
 			if (totDegree(oldComm) == 0 && oldTotDegree > 0)
 				numComms--;
@@ -123,23 +263,192 @@ public class Graph {
 				throw new Error("-ve total degree");
 		}
 
+		/**
+		 * Moves a node while other threads move other nodes. Only the community
+		 * total degrees are kept current, under striped locks; call settle() or
+		 * refresh() once every concurrent move has finished to bring the rest
+		 * back in line.
+		 */
+		public void moveToCommConcurrent(int node, int newComm) {
+			rangeCheck(node);
+			rangeCheck(newComm);
+
+			int oldComm = communities[node];
+			if (oldComm == newComm)
+				return;
+
+			cmatrix = null;
+			communities[node] = newComm;
+			int s1 = oldComm & (locks.length - 1);
+			int s2 = newComm & (locks.length - 1);
+			synchronized (locks[Math.min(s1, s2)]) {
+				synchronized (locks[Math.max(s1, s2)]) {
+					totDegrees.add(oldComm, -degree(node));
+					totDegrees.add(newComm, degree(node));
+				}
+			}
+		}
+
+		/**
+		 * Recomputes the community degrees, community count and modularity from
+		 * the community of each node, in one pass over the edges.
+		 */
+		public void refresh() {
+			totDegrees.fill(0);
+			intDegrees.fill(0);
+			for (int n = 0; n < order; n++) {
+				int comm = communities[n];
+				totDegrees.add(comm, degrees.get(n));
+				for (long i = offsets.get(n); i < offsets.get(n + 1); i++) {
+					if (communities[targets.get(i)] == comm)
+						intDegrees.add(comm, weights.get(i));
+				}
+			}
+
+			boolean[] isUsed = new boolean[order];
+			numComms = 0;
+			sumIntDegrees = 0;
+			sumTotDegreesSq = 0;
+			sumTotDegreesSqLarge = 0d;
+			for (int n = 0; n < order; n++) {
+				if (!isUsed[communities[n]]) {
+					isUsed[communities[n]] = true;
+					numComms++;
+				}
+				sumIntDegrees += intDegrees.get(n);
+				addTotDegreeSq(totDegrees.get(n), 1);
+			}
+			cmatrix = null;
+		}
+
+		/**
+		 * Brings the internal degrees, community count and modularity back in
+		 * line after moveToCommConcurrent(), given the first count nodes moved
+		 * since the last settle and the community each was in before; a node
+		 * must appear at most once. Only the edges of the moved nodes are read,
+		 * split into ranges that are summed on the executor into partial deltas
+		 * per community, so the cost follows the number of moves rather than the
+		 * size of the graph. The executor may be null to run in this thread.
+		 */
+		public void settle(final int[] moved, int[] previous, int count, ExecutorService executor, int ranges) {
+			if (movedFrom == null) {
+				movedFrom = new int[order];
+				Arrays.fill(movedFrom, -1);
+			}
+			for (int i = 0; i < count; i++) {
+				rangeCheck(previous[i]);
+				movedFrom[moved[i]] = previous[i];
+			}
+
+			int step = Math.max(BATCH_SIZE, (count + ranges - 1) / Math.max(1, ranges));
+			CommunityDeltas sum;
+			try {
+				if (executor == null || count <= step) {
+					sum = deltas(moved, 0, count);
+				} else {
+					sum = new CommunityDeltas(2 * count);
+					List<Callable<CommunityDeltas>> tasks = new ArrayList<Callable<CommunityDeltas>>();
+					for (int from = 0; from < count; from += step) {
+						final int start = from, end = Math.min(count, from + step);
+						tasks.add(new Callable<CommunityDeltas>() {
+							public CommunityDeltas call() {
+								return deltas(moved, start, end);
+							}
+						});
+					}
+					for (Future<CommunityDeltas> f : executor.invokeAll(tasks))
+						sum.addAll(f.get());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new Error("interrupted while settling moves");
+			} catch (ExecutionException e) {
+				throw new Error("settling moves failed", e.getCause());
+			} finally {
+				for (int i = 0; i < count; i++)
+					movedFrom[moved[i]] = -1;
+			}
+
+			for (int i = 0; i < sum.capacity(); i++) {
+				if (sum.slot(i) == 0)
+					continue;
+				int comm = sum.slot(i) - 1;
+				long totDegree = totDegrees.get(comm);
+				long oldTotDegree = totDegree - sum.totDelta(i);
+				intDegrees.add(comm, sum.intDelta(i));
+				sumIntDegrees += sum.intDelta(i);
+				addTotDegreeSq(oldTotDegree, -1);
+				addTotDegreeSq(totDegree, 1);
+				if (totDegree == 0 && oldTotDegree > 0)
+					numComms--;
+				if (totDegree > 0 && oldTotDegree == 0)
+					numComms++;
+			}
+			cmatrix = null;
+		}
+
+		// changes to community degrees from moved[from, to). An edge between two
+		// moved nodes is counted from the row of the lower one.
+		private CommunityDeltas deltas(int[] moved, int from, int to) {
+			CommunityDeltas d = new CommunityDeltas(2 * (to - from));
+			for (int k = from; k < to; k++) {
+				int node = moved[k];
+				int oldComm = movedFrom[node];
+				int newComm = communities[node];
+				d.add(oldComm, 0, -degrees.get(node));
+				d.add(newComm, 0, degrees.get(node));
+				for (long i = offsets.get(node); i < offsets.get(node + 1); i++) {
+					int neighbour = targets.get(i);
+					long weight = weights.get(i);
+					if (neighbour == node) {
+						d.add(oldComm, -weight, 0);
+						d.add(newComm, weight, 0);
+						continue;
+					}
+					int neighOldComm = movedFrom[neighbour];
+					if (neighOldComm >= 0 && neighbour < node)
+						continue;
+					if (neighOldComm < 0)
+						neighOldComm = communities[neighbour];
+					if (neighOldComm == oldComm)
+						d.add(oldComm, -weight * 2, 0);
+					if (communities[neighbour] == newComm)
+						d.add(newComm, weight * 2, 0);
+				}
+			}
+			return d;
+		}
+
+		private void addTotDegreeSq(long totDegree, int sign) {
+			if (isLarge())
+				sumTotDegreesSqLarge += sign * ((double) totDegree * totDegree);
+			else
+				sumTotDegreesSq += sign * (totDegree * totDegree);
+		}
+
 		// weight between a community and a node
-		public int dnodecomm(int node, int comm) {
+		public long dnodecomm(int node, int comm) {
 			rangeCheck(node);
 			rangeCheck(comm);
 
-			int dnodecomm = 0;
-			ArrayList<Integer> neighbours = neighbours(node);
-			for (int i = 0; i < neighbours.size(); i++) {
-				int neigh = neighbours.get(i);
-				if (community(neigh) == comm && node != neigh) {
-					dnodecomm += weight(node, neigh);
+			long dnodecomm = 0;
+			for (long i = offsets.get(node); i < offsets.get(node + 1); i++) {
+				int neigh = targets.get(i);
+				if (communities[neigh] == comm && node != neigh) {
+					dnodecomm += weights.get(i);
 				}
 			}
 			return dnodecomm;
 		}
 
+		// O(1): read from the running sums maintained by moveToComm
 		public double modularity() {
+			double sumSq = isLarge() ? sumTotDegreesSqLarge : (double) sumTotDegreesSq;
+			return (double) sumIntDegrees / m2 - sumSq / (m2 * m2);
+		}
+
+		// O(n) recomputation over every community, to cross-check modularity()
+		public double recomputeModularity() {
 			double q = 0d;
 
 			for (int comm = 0; comm < order; comm++) {
@@ -171,45 +480,53 @@ public class Graph {
 			return communities[node];
 		}
 
-		public int totDegree(int comm) {
+		public long totDegree(int comm) {
 			rangeCheck(comm);
-			return totDegrees[comm];
+			return totDegrees.get(comm);
 		}
 
-		public int intDegree(int comm) {
+		public long intDegree(int comm) {
 			rangeCheck(comm);
-			return intDegrees[comm];
+			return intDegrees.get(comm);
 		}
 
 		public int communityWeight(int c1, int c2) {
 			rangeCheck(c1);
 			rangeCheck(c2);
 
-			return cmatrix.get(c1, c2);
+			return communityMatrix().get(c1, c2);
 		}
 
 		public SparseIntMatrix.MyIterator commWeightIterator() {
-			return cmatrix.iterator();
+			return communityMatrix().iterator();
+		}
+
+		// int weights only: the weights between communities of a large graph may not fit
+		private SparseIntMatrix communityMatrix() {
+			if (isLarge())
+				throw new Error("a large graph's community weights do not fit in a SparseIntMatrix");
+			if (cmatrix == null) {
+				cmatrix = new SparseIntMatrix(order);
+				for (int n = 0; n < order; n++) {
+					for (long i = offsets.get(n); i < offsets.get(n + 1); i++) {
+						cmatrix.add(communities[n], communities[targets.get(i)], (int) weights.get(i));
+					}
+				}
+			}
+			return cmatrix;
 		}
 	}
 
-	/**
-	 * loads a partition set.
-	 */
+	// loads a partition set into the default partitioning
 	public void loadPartitioning(int[] partitioning) {
-		if (partitioning.length != order()) {
-			throw new Error("new partitioning size-graph size mismatch: " + order() + " != " + partitioning.length);
-		}
-		for (int node = 0; node < order(); node++) {
-			partitioning().moveToComm(node, partitioning[node]);
-		}
+		partitioning().load(partitioning);
 	}
 
 	public double m2() {
 		return m2;
 	}
 
-	public int size() {
+	public long size() {
 		return size;
 	}
 
@@ -221,38 +538,159 @@ public class Graph {
 		return order;
 	}
 
-	public ArrayList<Integer>[] adjList() {
-		return adjList;
+	public long numEdges() {
+		return targets.length();
+	}
+
+	// true if offsets, weights and degrees are stored as longs
+	public boolean isLarge() {
+		return degrees.isWide();
 	}
 
-	public int degree(int node) {
+	// true if the arrays are held outside the Java heap
+	public boolean isOffHeap() {
+		return targets.isOffHeap();
+	}
+
+	public long degree(int node) {
 		rangeCheck(node);
-		return degrees[node];
+		return degrees.get(node);
+	}
+
+	// binary searches the row of n1, so prefer the CSR accessors in loops
+	public long weight(int n1, int n2) {
+		long edge = edge(n1, n2);
+		return edge < 0 ? 0 : weights.get(edge);
 	}
 
-	public int weight(int n1, int n2) {
+	// index of the edge from n1 to n2 in the CSR arrays, or -1 if there is none
+	long edge(int n1, int n2) {
 		rangeCheck(n1);
 		rangeCheck(n2);
-		return matrix.get(n1, n2);
+		long lo = offsets.get(n1);
+		long hi = offsets.get(n1 + 1) - 1;
+		while (lo <= hi) {
+			long mid = (lo + hi) >>> 1;
+			int target = targets.get(mid);
+			if (target < n2)
+				lo = mid + 1;
+			else if (target > n2)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	public int numNeighbours(int node) {
+		rangeCheck(node);
+		return (int) (offsets.get(node + 1) - offsets.get(node));
+	}
+
+	// index of the first edge of node
+	public long neighbourStart(int node) {
+		rangeCheck(node);
+		return offsets.get(node);
 	}
 
-	public ArrayList<Integer> neighbours(int node) {
+	// index one past the last edge of node
+	public long neighbourEnd(int node) {
 		rangeCheck(node);
-		return adjList[node];
+		return offsets.get(node + 1);
+	}
+
+	public int neighbour(long edge) {
+		return targets.get(edge);
+	}
+
+	public long neighbourWeight(long edge) {
+		return weights.get(edge);
+	}
+
+	public boolean isSymmetric() {
+		for (int n = 0; n < order; n++) {
+			for (long i = offsets.get(n); i < offsets.get(n + 1); i++) {
+				if (weight(targets.get(i), n) != weights.get(i))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	// the CSR arrays themselves, for serialisation
+	LongArray offsets() {
+		return offsets;
+	}
+
+	IntArray targets() {
+		return targets;
+	}
+
+	LongArray weights() {
+		return weights;
 	}
 
-	public Partitioning partitioning() {
+	LongArray degrees() {
+		return degrees;
+	}
+
+	public synchronized Partitioning partitioning() {
+		if (partitioning == null)
+			partitioning = new Partitioning();
 		return partitioning;
 	}
 
-	public Map<Integer, Integer> index() {
+	public LongIdMap ids() {
+		return ids;
+	}
+
+	// null unless the nodes were given string ids
+	public StringIdMap names() {
+		return names;
+	}
+
+	// the original id of a node, or the node itself if it has none
+	public long id(int node) {
+		rangeCheck(node);
+		return node < ids.size() ? ids.id(node) : node;
+	}
+
+	// the node with an id, or -1 if none: the inverse of id(), so a node past the
+	// end of ids() is found by its own number
+	public int node(long id) {
+		int node = ids.get(id);
+		if (node < 0 && id >= ids.size() && id < order)
+			return (int) id;
+		return node;
+	}
+
+	// id -> node, as a boxed map built on first use; prefer ids()
+	public synchronized Map<Integer, Integer> index() {
+		if (index == null)
+			boxIds();
 		return index;
 	}
 
-	public Map<Integer, Integer> reverseIndex() {
+	// node -> id, as a boxed map built on first use; prefer ids()
+	public synchronized Map<Integer, Integer> reverseIndex() {
+		if (reverseIndex == null)
+			boxIds();
 		return reverseIndex;
 	}
 
+	private void boxIds() {
+		index = new HashMap<Integer, Integer>();
+		reverseIndex = new HashMap<Integer, Integer>();
+		for (int node = 0; node < ids.size(); node++) {
+			long wide = ids.id(node);
+			if (wide != (int) wide)
+				throw new Error("id " + wide + " does not fit in an int; use ids()");
+			int id = (int) wide;
+			index.put(id, node);
+			reverseIndex.put(node, id);
+		}
+	}
+
 	private void rangeCheck(int index) {
 		if (index >= order) {
 			throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
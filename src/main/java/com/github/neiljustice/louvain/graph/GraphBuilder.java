@@ -23,92 +23,467 @@ SOFTWARE. */
 
 package com.github.neiljustice.louvain.graph;
 
-import com.github.neiljustice.louvain.util.*;
-
+import com.github.neiljustice.louvain.util.IntArray;
+import com.github.neiljustice.louvain.util.LongArray;
 import java.util.*;
 
+/**
+ * Collects edges into flat primitive buffers and compacts them into the
+ * compressed sparse row (CSR) arrays that back a {@link Graph}.
+ */
 public class GraphBuilder {
-	private SparseIntMatrix matrix;
-	private ArrayList<Integer>[] adjList;
-	private Map<Integer, Integer> index, reverseIndex;
-	private int[] degrees;
+	private LongIdMap ids;
+	private StringIdMap names; // string ids, if the nodes have those instead
+	private boolean identityIndex = true; // every id so far equals its node number
+	// edge buffers, one entry per directed edge, off the heap if set:
+	private IntArray srcs, dsts, wts;
+	private long numEdges = 0;
+	// CSR arrays, filled in by compact():
+	private LongArray offsets, weights;
+	private IntArray targets;
+	private LongArray degrees;
 	private int order = 0;
 	private int numNodes = 0;
-	private int sizeDbl = 0;
+	private long sizeDbl = 0;
 	private int layer = 0;
+	private int threads = 1;
+	private boolean validate = false;
+	private boolean offHeap = false;
+	private boolean large = false;
 
-	/* The size parameter is needed to initialize the adjacency list */
+	/* The size parameter is used to presize the edge buffers */
 	public GraphBuilder(int size) {
 		numNodes = size;
 		initialize();
 	}
 	
-	public void addNode(Integer id) {
-		if (!index.containsKey(id)) {
-			index.put(id, order);
-			reverseIndex.put(order, id);
+	/* Number of threads coarseGrain aggregates with */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/* If set, coarseGrain checks the weight sum and symmetry of the graphs it builds */
+	public void setValidate(boolean validate) {
+		this.validate = validate;
+	}
+
+	/*
+	 * If set, the edges added are buffered in direct buffers, off the heap, and
+	 * sorted into the CSR arrays of the graphs built, also direct buffers, without
+	 * a heap copy; only arrays with an entry per node stay on the heap. Direct
+	 * memory is capped by -XX:MaxDirectMemorySize, which defaults to the maximum
+	 * heap size, so raise it for graphs bigger than the heap.
+	 */
+	public void setOffHeap(boolean offHeap) {
+		this.offHeap = offHeap;
+		if (srcs != null && srcs.isOffHeap() != offHeap) {
+			srcs = resize(srcs, srcs.length());
+			dsts = resize(dsts, dsts.length());
+			wts = resize(wts, wts.length());
+		}
+	}
+
+	/*
+	 * If set, the graphs built store offsets, weights and degrees as longs. Graphs
+	 * whose total weight or edge count does not fit in an int are built this way
+	 * regardless. This widens values, not the edge buffers: on the heap, those
+	 * hold at most Integer.MAX_VALUE - 8 directed edges, so build graphs with more
+	 * off the heap.
+	 */
+	public void setLarge(boolean large) {
+		this.large = large;
+	}
+
+	public void addNode(long id) {
+		if (names != null)
+			throw new Error("a graph's ids must be all numbers or all strings");
+		if (ids.add(id) == order) {
+			if (id != order)
+				identityIndex = false;
 			order++;
 		}
 	}
 
+	/* Adds a node with a string id, such as a URL. A graph cannot mix these with numeric ids */
+	public void addNode(String id) {
+		if (ids.size() > 0)
+			throw new Error("a graph's ids must be all numbers or all strings");
+		if (names == null)
+			names = new StringIdMap();
+		if (names.add(id) == order)
+			order++;
+	}
+
+	// takes over a map of string ids as the nodes, for loaders that intern ids themselves
+	void setNames(StringIdMap names) {
+		if (order > 0)
+			throw new Error("nodes have already been added");
+		this.names = names;
+		order = names.size();
+	}
+
 	/* Add symmetrical edge. Make sure the nodes were added to the graph via the *addNode* method 
 	 * before calling this method */
-	public void addEdgeSym(int n1, int n2, int weight) {
-		if (!index.containsKey(n1)) {
-			throw new Error("Node " + n1 + " does not exist in the graph");
-		}
-		if (!index.containsKey(n2)) {
-			throw new Error("Node " + n2 + " does not exist in the graph");
-		}
-		n1 = index.get(n1);
-		n2 = index.get(n2);
+	public void addEdgeSym(long id1, long id2, int weight) {
+		int n1 = nodeOf(id1);
+		int n2 = nodeOf(id2);
 		insertEdge(n1, n2, weight);
 		if (n1 != n2)
 			insertEdge(n2, n1, weight);
 	}
 
+	public void addEdgeSym(String id1, String id2, int weight) {
+		int n1 = names == null ? -1 : names.get(id1);
+		int n2 = names == null ? -1 : names.get(id2);
+		if (n1 < 0 || n2 < 0)
+			throw new Error("Node " + (n1 < 0 ? id1 : id2) + " does not exist in the graph");
+		insertEdge(n1, n2, weight);
+		if (n1 != n2)
+			insertEdge(n2, n1, weight);
+	}
+
+	/* Adds the first count symmetrical edges held in the given arrays, as addEdgeSym */
+	public void addEdgesSym(int[] n1s, int[] n2s, int[] weights, int count) {
+		ensureCapacity(numEdges + 2L * count);
+		for (int i = 0; i < count; i++) {
+			addEdgeSym(n1s[i], n2s[i], weights[i]);
+		}
+	}
+
+	// adds symmetrical edges between node numbers, for loaders that intern ids themselves
+	void insertEdgesSym(int[] n1s, int[] n2s, int[] weights, int count) {
+		insertEdgesSym(LongArray.of(IntArray.wrap(n1s)), LongArray.of(IntArray.wrap(n2s)), IntArray.wrap(weights),
+				count);
+	}
+
+	void insertEdgesSym(LongArray n1s, LongArray n2s, IntArray weights, long count) {
+		ensureCapacity(numEdges + 2 * count);
+		for (long i = 0; i < count; i++) {
+			int n1 = (int) n1s.get(i);
+			int n2 = (int) n2s.get(i);
+			insertEdge(n1, n2, weights.get(i));
+			if (n1 != n2)
+				insertEdge(n2, n1, weights.get(i));
+		}
+	}
+
+	// node number of an id, without a map lookup while ids are node numbers
+	private int nodeOf(long id) {
+		if (identityIndex && id >= 0 && id < order)
+			return (int) id;
+		int node = ids.get(id);
+		if (node < 0) {
+			throw new Error("Node " + id + " does not exist in the graph");
+		}
+		return node;
+	}
+
 	private void insertEdge(int n1, int n2, int weight) {
-		matrix.set(n1, n2, weight);
-		adjList[n1].add(n2);
-		degrees[n1] += weight;
-		sizeDbl += weight;
+		if (numEdges == srcs.length())
+			ensureCapacity(numEdges + 1);
+		srcs.set(numEdges, n1);
+		dsts.set(numEdges, n2);
+		wts.set(numEdges, weight);
+		numEdges++;
+	}
+
+	// grows the edge buffers at least twofold, so repeated batches stay linear
+	private void ensureCapacity(long capacity) {
+		long limit = offHeap ? Long.MAX_VALUE / 2 : Integer.MAX_VALUE - 8;
+		if (capacity > limit)
+			throw new Error("GraphBuilder holds at most " + limit + " directed edges" + (offHeap ? "" : " on the heap; see setOffHeap"));
+		if (capacity > srcs.length()) {
+			capacity = Math.min(limit, Math.max(capacity, 2 * srcs.length()));
+			srcs = resize(srcs, capacity);
+			dsts = resize(dsts, capacity);
+			wts = resize(wts, capacity);
+		}
+	}
+
+	// the buffered edges of a, in a new buffer of the given capacity, off the heap if set
+	private IntArray resize(IntArray a, long capacity) {
+		IntArray copy = IntArray.allocate(capacity, offHeap);
+		for (long i = 0; i < numEdges; i++)
+			copy.set(i, a.get(i));
+		return copy;
 	}
 
 	private void initialize() {
-		index = new HashMap<Integer, Integer>();
-		reverseIndex = new HashMap<Integer, Integer>();
-		matrix = new SparseIntMatrix(numNodes);
-		degrees = new int[numNodes];
-		adjList = (ArrayList<Integer>[]) new ArrayList[numNodes];
-		for (int i = 0; i < numNodes; i++) {
-			adjList[i] = new ArrayList<Integer>();
+		ids = new LongIdMap(numNodes);
+		names = null;
+		identityIndex = true;
+		long capacity = Math.max(16, numNodes * 2L);
+		srcs = IntArray.allocate(capacity, offHeap);
+		dsts = IntArray.allocate(capacity, offHeap);
+		wts = IntArray.allocate(capacity, offHeap);
+		numEdges = 0;
+		sizeDbl = 0;
+	}
+
+	/*
+	 * Sorts the edge buffers straight into the CSR arrays, off the heap if set:
+	 * a stable counting sort by source lays out the rows, then each row is sorted
+	 * by target through a scratch buffer as long as the longest row. Duplicates
+	 * end up adjacent in insertion order, and a repeated edge keeps the last
+	 * weight given.
+	 */
+	private void compact() {
+		long[] pos = new long[order + 1];
+		for (long e = 0; e < numEdges; e++)
+			pos[srcs.get(e) + 1]++;
+		long maxRow = 0;
+		for (int i = 0; i < order; i++) {
+			maxRow = Math.max(maxRow, pos[i + 1]);
+			pos[i + 1] += pos[i];
+		}
+		if (maxRow > Integer.MAX_VALUE - 8)
+			throw new Error("a node has more than " + (Integer.MAX_VALUE - 8) + " edges added");
+		long[] rowStarts = Arrays.copyOf(pos, order + 1);
+		IntArray targets = IntArray.allocate(numEdges, offHeap);
+		IntArray weights = IntArray.allocate(numEdges, offHeap);
+		for (long e = 0; e < numEdges; e++) {
+			long at = pos[srcs.get(e)]++;
+			targets.set(at, dsts.get(e));
+			weights.set(at, wts.get(e));
+		}
+		srcs = dsts = wts = null;
+		pos = null;
+
+		// target in the high half, place in the row in the low half
+		long[] keys = new long[(int) maxRow];
+		int[] rowWeights = new int[(int) maxRow];
+		long[] offsets = new long[order + 1];
+		long[] degrees = new long[order];
+		long count = 0;
+		for (int n = 0; n < order; n++) {
+			long start = rowStarts[n];
+			int len = (int) (rowStarts[n + 1] - start);
+			for (int k = 0; k < len; k++) {
+				keys[k] = (long) targets.get(start + k) << 32 | k;
+				rowWeights[k] = weights.get(start + k);
+			}
+			Arrays.sort(keys, 0, len);
+			for (int k = 0; k < len; k++) {
+				int target = (int) (keys[k] >>> 32);
+				if (k + 1 < len && (int) (keys[k + 1] >>> 32) == target)
+					continue; // a later weight replaces this one
+				int weight = rowWeights[(int) keys[k]];
+				targets.set(count, target);
+				weights.set(count, weight);
+				degrees[n] += weight;
+				count++;
+			}
+			offsets[n + 1] = count;
 		}
+		sizeDbl = 0;
+		for (int i = 0; i < order; i++)
+			sizeDbl += degrees[i];
+		if (count < numEdges) {
+			targets = prefix(targets, count);
+			weights = prefix(weights, count);
+		}
+		boolean wide = large || sizeDbl > Integer.MAX_VALUE;
+		this.offsets = LongArray.copyOf(offsets, offHeap, wide);
+		this.targets = targets;
+		this.weights = wide ? widen(weights) : LongArray.of(weights);
+		this.degrees = LongArray.copyOf(degrees, offHeap, wide);
+	}
+
+	// the first length values of a, in a new array of the same kind
+	private static IntArray prefix(IntArray a, long length) {
+		IntArray copy = IntArray.allocate(length, a.isOffHeap());
+		for (long i = 0; i < length; i++)
+			copy.set(i, a.get(i));
+		return copy;
+	}
+
+	// a copied out to longs
+	private static LongArray widen(IntArray a) {
+		LongArray values = LongArray.allocate(a.length(), a.isOffHeap(), true);
+		for (long i = 0; i < a.length(); i++)
+			values.set(i, a.get(i));
+		return values;
 	}
 
 	public Graph coarseGrain(Graph g, Map<Integer, Integer> map) {
-		this.order = g.partitioning().numComms();
+		return coarseGrain(g.partitioning(), map);
+	}
+
+	public Graph coarseGrain(Graph.Partitioning p, Map<Integer, Integer> map) {
+		int[] commToNode = new int[p.graph().order()];
+		for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+			commToNode[entry.getKey()] = entry.getValue();
+		}
+		return coarseGrain(p, commToNode, p.numComms());
+	}
+
+	public Graph coarseGrain(Graph g, int[] commToNode, int order) {
+		return coarseGrain(g.partitioning(), commToNode, order);
+	}
+
+	/*
+	 * Builds the graph whose nodes are the communities of p, where commToNode
+	 * gives the new node of each community. Edges inside a community become
+	 * self-edges.
+	 */
+	public Graph coarseGrain(Graph.Partitioning p, int[] commToNode, int order) {
+		Graph g = p.graph();
+		this.order = order;
 		this.layer = g.layer() + 1;
-		initialize();
-		int sum = 0;
+		ids = new LongIdMap();
+		names = null;
+
+		Aggregator aggregator = new Aggregator(g, p.communities(), commToNode, order);
+		aggregator.run(threads, offHeap, large);
+		sizeDbl = aggregator.sizeDbl;
+		offsets = LongArray.copyOf(aggregator.offsets, offHeap, aggregator.large);
+		targets = aggregator.targets;
+		weights = aggregator.weights;
+		degrees = LongArray.copyOf(aggregator.degrees, offHeap, aggregator.large);
+
+		Graph coarse = new Graph(this);
+		if (validate) {
+			// m2() is exact, where size() rounds an odd self-edge weight down
+			if (sizeDbl != (long) g.m2())
+				throw new Error("builder recieved wrong weights: " + sizeDbl + " " + (long) g.m2());
+			if (!coarse.isSymmetric())
+				throw new Error("asymmetric matrix");
+		}
+		return coarse;
+	}
 
-		for (SparseIntMatrix.MyIterator it = g.partitioning().commWeightIterator(); it.hasNext();) {
-			it.advance();
-			int weight = it.value();
+	/*
+	 * Builds g with a batch of edge changes applied. Nodes keep their numbers,
+	 * and new ids are numbered from g.order() in the order they first appear.
+	 * The sizes of the new arrays are worked out from the changes first, then
+	 * runs of unchanged rows are copied across in bulk and only the rows with
+	 * changes are merged, so a batch costs O(b log b) plus a copy of the arrays.
+	 */
+	public Graph update(Graph g, EdgeBatch batch) {
+		if (g.layer() > 0)
+			throw new Error("only a base graph can be updated");
+		this.layer = 0;
+		if (g.names() != null)
+			throw new Error("a graph with string ids cannot be updated by number");
+		this.order = g.order();
+		ids = g.ids().copy();
+		names = null;
+
+		// the last change to each directed edge, keyed by (src, dst) packed in a long
+		LongIdMap changed = new LongIdMap(2 * batch.size());
+		int[] changeWeights = new int[2 * batch.size()];
+		for (int c = 0; c < batch.size(); c++) {
+			int n1 = nodeOrNew(batch.id1(c), batch.isDeletion(c));
+			int n2 = nodeOrNew(batch.id2(c), batch.isDeletion(c));
+			changeWeights[changed.add((long) n1 << 32 | n2)] = batch.weight(c);
+			changeWeights[changed.add((long) n2 << 32 | n1)] = batch.weight(c);
+		}
+		int numChanges = changed.size();
+		long[] keys = new long[numChanges];
+		for (int c = 0; c < numChanges; c++)
+			keys[c] = changed.id(c);
+		Arrays.sort(keys); // by source, then target
+
+		// each change adds, replaces or deletes one edge, which fixes the new sizes
+		long numEdges = g.numEdges();
+		sizeDbl = (long) g.m2();
+		for (int c = 0; c < numChanges; c++) {
+			int src = (int) (keys[c] >>> 32);
+			int dst = (int) keys[c];
+			long edge = src < g.order() && dst < g.order() ? g.edge(src, dst) : -1;
+			int weight = changeWeights[changed.get(keys[c])];
+			if (edge >= 0) {
+				sizeDbl -= g.neighbourWeight(edge);
+				numEdges--;
+			}
 			if (weight != 0) {
-				int n1 = map.get((int) it.x());
-				int n2 = map.get((int) it.y());
-				insertEdge(n1, n2, weight);
-				sum += weight;
+				sizeDbl += weight;
+				numEdges++;
 			}
 		}
+		boolean wide = large || g.isLarge() || sizeDbl > Integer.MAX_VALUE || numEdges > Integer.MAX_VALUE;
 
-		if (!matrix.isSymmetric())
-			throw new Error("asymmetric matrix");
-		if (sum != g.size() * 2)
-			throw new Error("builder recieved wrong weights: " + sum + " " + (g.size() * 2));
-		if (sum != sizeDbl)
-			throw new Error("Coarse-grain error: " + sum + " != " + sizeDbl);
-		return build();
+		long[] offsets = new long[order + 1];
+		IntArray targets = IntArray.allocate(numEdges, offHeap);
+		LongArray weights = LongArray.allocate(numEdges, offHeap, wide);
+		long[] degrees = new long[order];
+		long e = 0;
+		int c = 0;
+		for (int node = 0; node < order; node++) {
+			if (node < g.order() && (c == numChanges || (int) (keys[c] >>> 32) != node)) {
+				// the run of unchanged rows up to the next change
+				int last = node;
+				int next = c < numChanges ? (int) (keys[c] >>> 32) : g.order();
+				while (last + 1 < Math.min(next, g.order()))
+					last++;
+				long from = g.neighbourStart(node);
+				long length = g.neighbourEnd(last) - from;
+				IntArray.copy(g.targets(), from, targets, e, length);
+				LongArray.copy(g.weights(), from, weights, e, length);
+				for (int n = node; n <= last; n++) {
+					degrees[n] = g.degree(n);
+					offsets[n + 1] = e + g.neighbourEnd(n) - from;
+				}
+				e += length;
+				node = last;
+				continue;
+			}
+
+			long i = node < g.order() ? g.neighbourStart(node) : 0;
+			long end = node < g.order() ? g.neighbourEnd(node) : 0;
+			while (i < end || (c < numChanges && (int) (keys[c] >>> 32) == node)) {
+				int oldTarget = i < end ? g.neighbour(i) : Integer.MAX_VALUE;
+				int newTarget = Integer.MAX_VALUE;
+				if (c < numChanges && (int) (keys[c] >>> 32) == node)
+					newTarget = (int) keys[c];
+				int target;
+				long weight;
+				if (oldTarget < newTarget) {
+					target = oldTarget;
+					weight = g.neighbourWeight(i++);
+				} else {
+					target = newTarget;
+					weight = changeWeights[changed.get(keys[c++])];
+					if (oldTarget == newTarget)
+						i++;
+					if (weight == 0)
+						continue; // deleted
+				}
+				targets.set(e, target);
+				weights.set(e, weight);
+				degrees[node] += weight;
+				e++;
+			}
+			offsets[node + 1] = e;
+		}
+		if (e != numEdges)
+			throw new Error("update wrote " + e + " edges, expected " + numEdges);
+
+		this.offsets = LongArray.copyOf(offsets, offHeap, wide);
+		this.targets = targets;
+		this.weights = weights;
+		this.degrees = LongArray.copyOf(degrees, offHeap, wide);
+		return new Graph(this);
+	}
+
+	// node number of an id, adding a node for an id not yet seen. As in
+	// Graph.id(), nodes past the end of ids are their own id.
+	private int nodeOrNew(long id, boolean mustExist) {
+		int node = ids.get(id);
+		if (node < 0 && id >= ids.size() && id < order)
+			return (int) id;
+		if (node < 0) {
+			if (mustExist)
+				throw new Error("Node " + id + " does not exist in the graph");
+			// give the nodes without an id their own, so the new id lines up with its node
+			for (int n = ids.size(); n < order; n++) {
+				if (ids.add(n) != n)
+					throw new Error("Node " + n + " has no id, and " + n + " is the id of another node");
+			}
+			node = order++;
+			ids.add(id);
+		}
+		return node;
 	}
 
 	public Graph fromCommunity(Graph g, ArrayList<Integer> members) {
@@ -117,49 +492,42 @@ public class GraphBuilder {
 
 		for (int newNode = 0; newNode < order; newNode++) {
 			int oldNode = members.get(newNode);
-			for (int i = 0; i < g.neighbours(oldNode).size(); i++) {
-				int oldNeigh = g.neighbours(oldNode).get(i);
+			for (long i = g.neighbourStart(oldNode); i < g.neighbourEnd(oldNode); i++) {
+				int oldNeigh = g.neighbour(i);
 				int newNeigh = -1;
 				if ((newNeigh = members.indexOf(oldNeigh)) != -1) {
-					insertEdge(newNode, newNeigh, g.weight(oldNode, oldNeigh));
+					insertEdge(newNode, newNeigh, Math.toIntExact(g.neighbourWeight(i)));
 				}
 			}
 		}
-		if (!matrix.isSymmetric())
+		Graph sub = build();
+		if (!sub.isSymmetric())
 			throw new Error("asymmetric matrix");
-		return build();
+		return sub;
 	}
 
+	// see GraphGenerator, which this samples with, for seeds and planted communities
 	public Graph erdosRenyi(int order, double prob) {
-		this.order = order;
-		Random rnd = new Random();
-		initialize();
+		return new GraphGenerator(new Random().nextLong()).erdosRenyi(order, prob).graph();
+	}
 
-		for (int n1 = 0; n1 < order; n1++) {
-			for (int n2 = 0; n2 < order; n2++) {
-				if (matrix.get(n2, n1) == 0 && n1 != n2 && rnd.nextDouble() < prob) {
-					addEdgeSym(n1, n2, 1);
-				}
-			}
-		}
-		if (!matrix.isSymmetric())
-			throw new Error("asymmetric matrix");
-		return build();
+	public LongArray offsets() {
+		return offsets;
 	}
 
-	public SparseIntMatrix matrix() {
-		return matrix;
+	public IntArray targets() {
+		return targets;
 	}
 
-	public ArrayList<Integer>[] adjList() {
-		return adjList;
+	public LongArray weights() {
+		return weights;
 	}
 
-	public int[] degrees() {
+	public LongArray degrees() {
 		return degrees;
 	}
 
-	public int sizeDbl() {
+	public long sizeDbl() {
 		return sizeDbl;
 	}
 
@@ -171,15 +539,31 @@ public class GraphBuilder {
 		return layer;
 	}
 
-	public Map<Integer, Integer> index() {
-		return index;
+	public LongIdMap ids() {
+		return ids;
 	}
 
-	public Map<Integer, Integer> reverseIndex() {
-		return reverseIndex;
+	public StringIdMap names() {
+		return names;
 	}
 
 	public Graph build() {
+		compact();
+		return new Graph(this);
+	}
+
+	// builds a graph around CSR arrays that are already complete
+	Graph fromCsr(int layer, LongArray offsets, IntArray targets, LongArray weights, LongArray degrees,
+			long sizeDbl, LongIdMap ids) {
+		this.order = (int) degrees.length();
+		this.layer = layer;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.weights = weights;
+		this.degrees = degrees;
+		this.sizeDbl = sizeDbl;
+		this.ids = ids;
+		this.names = null;
 		return new Graph(this);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,285 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.graph;
+
+import com.github.neiljustice.louvain.util.IntArray;
+import com.github.neiljustice.louvain.util.LongArray;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Reads and writes graphs in a compact binary file holding the CSR arrays, so
+ * that a graph can be reopened without parsing. All values are little-endian:
+ *
+ * <pre>
+ * int   magic ("LVNG"), version, flags (bit 0: ids present, bit 1: wide), order, layer, 0
+ * long  numEdges, sizeDbl (sum of all degrees)
+ * int[] offsets (order + 1)
+ * int[] targets (numEdges)
+ * int[] weights (numEdges), degrees (order)
+ * long[] ids (order), the original id of each node, if flag bit 0 is set
+ * </pre>
+ *
+ * In a large graph (see Graph.isLarge()) the wide flag is set and offsets,
+ * weights and degrees are long[], so a file can hold any graph that fits in
+ * memory. Versions 1 and 2 are still read: their header is 32 bytes, with
+ * numEdges an int before the layer, and version 1 ids are int[].
+ *
+ * Files are read through read-only memory maps, so JVMs opening the same file
+ * share its pages in the OS page cache. read() bulk-copies each array onto the
+ * heap, so holds at most 2^31 - 9 edges; map() leaves the edge arrays in the
+ * mapping, so a graph bigger than the heap can be clustered straight from the
+ * file.
+ */
+public class GraphFile {
+	static final int MAGIC = 0x474E564C; // "LVNG" read little-endian
+	static final int VERSION = 3; // 1 held 32-bit ids, 1 and 2 a 32-bit edge count
+	static final int HAS_IDS = 1;
+	static final int WIDE = 2;
+	static final int HEADER_BYTES = 40;
+	static final int OLD_HEADER_BYTES = 32; // versions 1 and 2
+	private static final int REGION = 1 << 30; // bytes mapped or written at once
+
+	/* Converts a text edge list (see EdgeListLoader) to a graph file */
+	public static void convert(String edgeList, String out) {
+		write(new EdgeListLoader().load(edgeList), Paths.get(out));
+	}
+
+	public static void write(Graph g, Path path) {
+		if (g.names() != null)
+			throw new Error("graph files cannot hold string ids");
+		boolean hasIds = !isIdentity(g);
+		boolean wide = g.isLarge();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt((hasIds ? HAS_IDS : 0) | (wide ? WIDE : 0));
+		header.putInt(g.order()).putInt(g.layer()).putInt(0);
+		header.putLong(g.numEdges()).putLong((long) g.m2());
+		((Buffer) header).flip();
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			channel.write(header);
+			ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			writeValues(channel, buf, g.offsets(), wide);
+			writeInts(channel, buf, g.targets());
+			writeValues(channel, buf, g.weights(), wide);
+			writeValues(channel, buf, g.degrees(), wide);
+			if (hasIds) {
+				long[] ids = new long[g.order()];
+				for (int n = 0; n < g.order(); n++) {
+					ids[n] = g.id(n);
+				}
+				writeLongs(channel, buf, LongArray.wrap(ids));
+			}
+		} catch (IOException e) {
+			throw new Error("IO error");
+		}
+	}
+
+	public static Graph read(String filename) {
+		return read(Paths.get(filename));
+	}
+
+	public static Graph read(Path path) {
+		return open(path, false);
+	}
+
+	/* Opens a graph whose arrays stay in a read-only mapping of the file */
+	public static Graph map(Path path) {
+		return open(path, true);
+	}
+
+	private static Graph open(Path path, boolean mapped) {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() < OLD_HEADER_BYTES)
+				throw new Error("not a graph file: " + path);
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEADER_BYTES, channel.size()))
+					.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt() != MAGIC)
+				throw new Error("not a graph file: " + path);
+			int version = header.getInt();
+			if (version < 1 || version > VERSION)
+				throw new Error("unsupported graph file version: " + version);
+			int flags = header.getInt();
+			int order = header.getInt();
+			long numEdges;
+			int layer;
+			long pos;
+			if (version < 3) {
+				numEdges = header.getInt();
+				layer = header.getInt();
+				pos = OLD_HEADER_BYTES;
+			} else {
+				if (header.limit() < HEADER_BYTES)
+					throw new Error("truncated graph file");
+				layer = header.getInt();
+				header.getInt(); // padding
+				numEdges = header.getLong();
+				pos = HEADER_BYTES;
+			}
+			long sizeDbl = header.getLong();
+			boolean wide = (flags & WIDE) != 0;
+			int width = wide ? 8 : 4;
+
+			LongArray offsets = readValues(channel, pos, order + 1, wide, mapped);
+			pos += width * offsets.length();
+			IntArray targets = readInts(channel, pos, numEdges, mapped);
+			pos += 4L * targets.length();
+			LongArray weights = readValues(channel, pos, numEdges, wide, mapped);
+			pos += width * weights.length();
+			LongArray degrees = readValues(channel, pos, order, wide, mapped);
+			pos += width * degrees.length();
+
+			LongIdMap index = new LongIdMap(order);
+			long[] ids = null;
+			if ((flags & HAS_IDS) != 0 && version == 1) {
+				int[] narrow = new int[order];
+				readInts(channel, pos, narrow);
+				ids = new long[order];
+				for (int n = 0; n < order; n++)
+					ids[n] = narrow[n];
+			} else if ((flags & HAS_IDS) != 0) {
+				ids = new long[order];
+				readLongs(channel, pos, ids);
+			}
+			for (int n = 0; n < order; n++) {
+				index.add(ids == null ? n : ids[n]);
+			}
+			return new GraphBuilder(0).fromCsr(layer, offsets, targets, weights, degrees, sizeDbl, index);
+		} catch (NoSuchFileException e) {
+			throw new Error("file not found: " + path);
+		} catch (IOException e) {
+			throw new Error("IO error");
+		}
+	}
+
+	// true if each node is its own id, or (as in coarse graphs) has none
+	private static boolean isIdentity(Graph g) {
+		for (int n = 0; n < g.ids().size(); n++) {
+			if (g.ids().id(n) != n)
+				return false;
+		}
+		return true;
+	}
+
+	private static void writeInts(FileChannel channel, ByteBuffer buf, IntArray a) throws IOException {
+		((Buffer) buf).clear(); // Buffer casts keep the bytecode runnable on Java 8
+		IntBuffer ints = buf.asIntBuffer();
+		int[] block = new int[ints.capacity()];
+		for (long i = 0; i < a.length(); i += block.length) {
+			int len = (int) Math.min(block.length, a.length() - i);
+			a.get(i, block, 0, len);
+			((Buffer) ints).clear();
+			ints.put(block, 0, len);
+			((Buffer) buf).clear();
+			((Buffer) buf).limit(len * 4);
+			while (buf.hasRemaining())
+				channel.write(buf);
+		}
+	}
+
+	// a as longs if wide, else as the ints behind it
+	private static void writeValues(FileChannel channel, ByteBuffer buf, LongArray a, boolean wide)
+			throws IOException {
+		if (wide)
+			writeLongs(channel, buf, a);
+		else
+			writeInts(channel, buf, a.ints());
+	}
+
+	private static void writeLongs(FileChannel channel, ByteBuffer buf, LongArray a) throws IOException {
+		((Buffer) buf).clear();
+		LongBuffer longs = buf.asLongBuffer();
+		for (long i = 0; i < a.length(); i += longs.capacity()) {
+			int len = (int) Math.min(longs.capacity(), a.length() - i);
+			((Buffer) longs).clear();
+			for (int k = 0; k < len; k++)
+				longs.put(a.get(i + k));
+			((Buffer) buf).clear();
+			((Buffer) buf).limit(len * 8);
+			while (buf.hasRemaining())
+				channel.write(buf);
+		}
+	}
+
+	// length ints from the file at pos, either mapped or copied onto the heap
+	private static IntArray readInts(FileChannel channel, long pos, long length, boolean mapped) throws IOException {
+		if (pos + 4L * length > channel.size())
+			throw new Error("truncated graph file");
+		if (mapped)
+			return IntArray.map(channel, pos, length);
+		int[] a = new int[heapLength(length)];
+		readInts(channel, pos, a);
+		return IntArray.wrap(a);
+	}
+
+	// length values from the file at pos, longs if wide and ints otherwise
+	private static LongArray readValues(FileChannel channel, long pos, long length, boolean wide, boolean mapped)
+			throws IOException {
+		if (!wide)
+			return LongArray.of(readInts(channel, pos, length, mapped));
+		if (pos + 8L * length > channel.size())
+			throw new Error("truncated graph file");
+		if (mapped)
+			return LongArray.map(channel, pos, length);
+		long[] a = new long[heapLength(length)];
+		readLongs(channel, pos, a);
+		return LongArray.wrap(a);
+	}
+
+	private static int heapLength(long length) {
+		if (length > Integer.MAX_VALUE - 8)
+			throw new Error("graph too big to read onto the heap: " + length + " values; map() it instead");
+		return (int) length;
+	}
+
+	// fills a from the file at pos, mapping a region at a time; returns the end
+	private static long readInts(FileChannel channel, long pos, int[] a) throws IOException {
+		if (pos + 4L * a.length > channel.size())
+			throw new Error("truncated graph file");
+		for (int i = 0; i < a.length;) {
+			int len = Math.min(REGION / 4, a.length - i);
+			channel.map(FileChannel.MapMode.READ_ONLY, pos, 4L * len).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer()
+					.get(a, i, len);
+			i += len;
+			pos += 4L * len;
+		}
+		return pos;
+	}
+
+	// fills a from the file at pos, mapping a region at a time
+	private static void readLongs(FileChannel channel, long pos, long[] a) throws IOException {
+		if (pos + 8L * a.length > channel.size())
+			throw new Error("truncated graph file");
+		for (int i = 0; i < a.length;) {
+			int len = Math.min(REGION / 8, a.length - i);
+			channel.map(FileChannel.MapMode.READ_ONLY, pos, 8L * len).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer()
+					.get(a, i, len);
+			i += len;
+			pos += 8L * len;
+		}
+	}
+}
@@ -0,0 +1,509 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.graph;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Generates random graphs with planted communities: Erdos-Renyi graphs, the
+ * stochastic block model and the LFR benchmark. Work is cut into tasks that
+ * each get their own SplittableRandom, split from the seed in a fixed order, so
+ * a seed gives the same graph whatever the number of threads.
+ *
+ * Pairs of nodes are not tested one by one: the Erdos-Renyi and block model
+ * samplers jump straight to the next edge with a geometric skip (Batagelj and
+ * Brandes, 2005), so they run in time proportional to the number of edges.
+ */
+public class GraphGenerator {
+	private static final long TASK_PAIRS = 1L << 26; // node pairs sampled per task
+	private final long seed;
+	private int threads = 1;
+
+	public GraphGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		this.threads = threads;
+	}
+
+	// G(n, p); every node is planted in community 0
+	public PlantedGraph erdosRenyi(int order, double prob) {
+		return stochasticBlockModel(new int[] { order }, prob, 0d);
+	}
+
+	/**
+	 * Nodes are split into consecutive blocks of the given sizes, and each pair
+	 * of nodes is joined with probability pIn inside a block and pOut between
+	 * blocks. The blocks are the planted communities.
+	 */
+	public PlantedGraph stochasticBlockModel(int[] blockSizes, double pIn, double pOut) {
+		checkProbability(pIn);
+		checkProbability(pOut);
+		int[] starts = new int[blockSizes.length + 1];
+		for (int b = 0; b < blockSizes.length; b++) {
+			if (blockSizes[b] < 0)
+				throw new IllegalArgumentException("negative block size: " + blockSizes[b]);
+			starts[b + 1] = starts[b] + blockSizes[b];
+		}
+		int order = starts[blockSizes.length];
+		int[] communities = new int[order];
+		for (int b = 0; b < blockSizes.length; b++) {
+			Arrays.fill(communities, starts[b], starts[b + 1], b);
+		}
+
+		SplittableRandom rnd = new SplittableRandom(seed);
+		List<Callable<Edges>> tasks = new ArrayList<Callable<Edges>>();
+		for (int a = 0; a < blockSizes.length; a++) {
+			for (int b = 0; b <= a; b++) {
+				if (a == b && pIn > 0)
+					addTriangle(tasks, rnd, starts[a], starts[a + 1], pIn);
+				else if (a != b && pOut > 0)
+					addRectangle(tasks, rnd, starts[a], starts[a + 1], starts[b], blockSizes[b], pOut);
+			}
+		}
+		return new PlantedGraph(build(order, run(tasks)), communities);
+	}
+
+	/**
+	 * An LFR benchmark graph (Lancichinetti, Fortunato and Radicchi, 2008). Node
+	 * degrees follow a power law with the given mean and maximum, community sizes
+	 * another power law, and each node has about a fraction mixing of its edges
+	 * outside its community. Edges are wired by a configuration model, first
+	 * within each community (in parallel) and then between them. Stubs that would
+	 * make a self-edge, a repeated edge or an external edge inside a community are
+	 * paired again for a few rounds, and then dropped, so the realised degrees
+	 * can run slightly low.
+	 */
+	public PlantedGraph lfr(int order, double meanDegree, int maxDegree, double degreeExponent, int minCommunity,
+			int maxCommunity, double communityExponent, double mixing) {
+		if (maxDegree >= order || meanDegree < 1 || meanDegree > maxDegree)
+			throw new IllegalArgumentException("need 1 <= meanDegree <= maxDegree < order");
+		if (minCommunity < 1 || minCommunity > maxCommunity || maxCommunity > order)
+			throw new IllegalArgumentException("need 1 <= minCommunity <= maxCommunity <= order");
+		checkProbability(mixing);
+		SplittableRandom rnd = new SplittableRandom(seed);
+
+		// degrees, from the power law whose least degree gives the closest mean
+		int lo = 1, hi = maxDegree; // least minimum degree whose mean reaches meanDegree
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (new PowerLaw(mid, maxDegree, degreeExponent).mean() < meanDegree)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		PowerLaw degreeLaw = new PowerLaw(lo, maxDegree, degreeExponent);
+		if (lo > 1) {
+			PowerLaw below = new PowerLaw(lo - 1, maxDegree, degreeExponent);
+			if (meanDegree - below.mean() < degreeLaw.mean() - meanDegree)
+				degreeLaw = below;
+		}
+		int[] degrees = new int[order];
+		int[] internal = new int[order];
+		for (int n = 0; n < order; n++) {
+			degrees[n] = degreeLaw.sample(rnd);
+			internal[n] = (int) Math.round((1 - mixing) * degrees[n]);
+		}
+
+		int[] sizes = communitySizes(order, minCommunity, maxCommunity, communityExponent, rnd);
+		int[] communities = assignCommunities(internal, sizes, rnd);
+
+		// members of each community, by counting sort
+		int[] memberStarts = new int[sizes.length + 1];
+		for (int c = 0; c < sizes.length; c++)
+			memberStarts[c + 1] = memberStarts[c] + sizes[c];
+		int[] members = new int[order];
+		int[] pos = Arrays.copyOf(memberStarts, sizes.length);
+		for (int n = 0; n < order; n++)
+			members[pos[communities[n]]++] = n;
+
+		List<Callable<Edges>> tasks = new ArrayList<Callable<Edges>>();
+		for (int c = 0; c < sizes.length; c++) {
+			int[] stubs = stubs(members, memberStarts[c], memberStarts[c + 1], internal);
+			tasks.add(new Wiring(stubs, null, rnd.split()));
+		}
+		int[] external = new int[order];
+		for (int n = 0; n < order; n++)
+			external[n] = degrees[n] - internal[n];
+		int[] all = new int[order];
+		for (int n = 0; n < order; n++)
+			all[n] = n;
+		tasks.add(new Wiring(stubs(all, 0, order, external), communities, rnd.split()));
+		return new PlantedGraph(build(order, run(tasks)), communities);
+	}
+
+	// community sizes from a power law, trimmed to sum to order
+	private int[] communitySizes(int order, int min, int max, double exponent, SplittableRandom rnd) {
+		PowerLaw law = new PowerLaw(min, max, exponent);
+		int[] sizes = new int[16];
+		int count = 0;
+		int total = 0;
+		while (total < order) {
+			if (count == sizes.length)
+				sizes = Arrays.copyOf(sizes, count * 2);
+			sizes[count] = law.sample(rnd);
+			total += sizes[count++];
+		}
+		sizes = Arrays.copyOf(sizes, count);
+		// take the excess from communities above the minimum, or else the last
+		for (int c = 0; total > order; c = (c + 1) % count) {
+			if (sizes[c] > min || c == count - 1) {
+				sizes[c]--;
+				total--;
+			}
+		}
+		return sizes;
+	}
+
+	/*
+	 * Places each node, those with the most internal edges first, in a random
+	 * community that still has room and is big enough for its internal degree.
+	 * Where a few random tries find none, the node goes in any community with
+	 * room and its internal degree is cut to fit.
+	 */
+	private int[] assignCommunities(int[] internal, int[] sizes, SplittableRandom rnd) {
+		int order = internal.length;
+		Integer[] bySize = new Integer[sizes.length];
+		for (int c = 0; c < sizes.length; c++)
+			bySize[c] = c;
+		final int[] sizesFinal = sizes;
+		Arrays.sort(bySize, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Integer.compare(sizesFinal[b], sizesFinal[a]);
+			}
+		});
+		int[] room = Arrays.copyOf(sizes, sizes.length);
+		// communities with room, so that a full one can be swapped out in O(1)
+		int[] open = new int[sizes.length];
+		int[] openPos = new int[sizes.length];
+		int numOpen = 0;
+		for (int c = 0; c < sizes.length; c++) {
+			if (room[c] > 0) {
+				openPos[c] = numOpen;
+				open[numOpen++] = c;
+			}
+		}
+
+		int[] nodes = new int[order];
+		for (int n = 0; n < order; n++)
+			nodes[n] = n;
+		for (int i = order; i > 1; i--) {
+			int r = rnd.nextInt(i);
+			int temp = nodes[i - 1];
+			nodes[i - 1] = nodes[r];
+			nodes[r] = temp;
+		}
+		int maxInternal = 0;
+		for (int n = 0; n < order; n++)
+			maxInternal = Math.max(maxInternal, internal[n]);
+		int[] byInternal = countingSortDescending(nodes, internal, maxInternal);
+
+		int[] communities = new int[order];
+		int eligible = 0; // communities bigger than the internal degree, a prefix of bySize
+		for (int node : byInternal) {
+			while (eligible < bySize.length && sizes[bySize[eligible]] > internal[node])
+				eligible++;
+			int comm = -1;
+			for (int tries = 0; tries < 32 && eligible > 0 && comm < 0; tries++) {
+				int c = bySize[rnd.nextInt(eligible)];
+				if (room[c] > 0)
+					comm = c;
+			}
+			for (int tries = 0; tries < 32 && comm < 0; tries++) {
+				int c = open[rnd.nextInt(numOpen)];
+				if (sizes[c] > internal[node] || tries == 31)
+					comm = c;
+			}
+			communities[node] = comm;
+			internal[node] = Math.min(internal[node], sizes[comm] - 1);
+			if (--room[comm] == 0) {
+				int last = open[--numOpen];
+				open[openPos[comm]] = last;
+				openPos[last] = openPos[comm];
+			}
+		}
+		return communities;
+	}
+
+	// nodes sorted by key, largest first, keeping their order within a key
+	private static int[] countingSortDescending(int[] nodes, int[] keys, int maxKey) {
+		int[] starts = new int[maxKey + 2];
+		for (int node : nodes)
+			starts[maxKey - keys[node] + 1]++;
+		for (int k = 0; k <= maxKey; k++)
+			starts[k + 1] += starts[k];
+		int[] sorted = new int[nodes.length];
+		for (int node : nodes)
+			sorted[starts[maxKey - keys[node]]++] = node;
+		return sorted;
+	}
+
+	// each node repeated once per stub, with one dropped if the total is odd
+	private static int[] stubs(int[] nodes, int from, int to, int[] counts) {
+		int total = 0;
+		for (int i = from; i < to; i++)
+			total += counts[nodes[i]];
+		int[] stubs = new int[total - (total % 2)];
+		int s = 0;
+		for (int i = from; i < to && s < stubs.length; i++) {
+			for (int k = 0; k < counts[nodes[i]] && s < stubs.length; k++)
+				stubs[s++] = nodes[i];
+		}
+		return stubs;
+	}
+
+	private void addTriangle(List<Callable<Edges>> tasks, SplittableRandom rnd, int from, int to, double p) {
+		// row v pairs v with the nodes of the block before it
+		long pairs = 0;
+		int taskFrom = from;
+		for (int v = from; v < to; v++) {
+			pairs += v - from;
+			if (pairs >= TASK_PAIRS || v == to - 1) {
+				tasks.add(new Sampler(taskFrom, v + 1, from, -1, p, rnd.split()));
+				taskFrom = v + 1;
+				pairs = 0;
+			}
+		}
+	}
+
+	private void addRectangle(List<Callable<Edges>> tasks, SplittableRandom rnd, int from, int to, int colStart,
+			int cols, double p) {
+		if (cols == 0)
+			return;
+		int rows = (int) Math.max(1, TASK_PAIRS / cols);
+		for (int v = from; v < to; v += rows) {
+			tasks.add(new Sampler(v, Math.min(to, v + rows), colStart, cols, p, rnd.split()));
+		}
+	}
+
+	private List<Edges> run(List<Callable<Edges>> tasks) {
+		List<Edges> edges = new ArrayList<Edges>();
+		try {
+			if (threads == 1) {
+				for (Callable<Edges> task : tasks)
+					edges.add(task.call());
+				return edges;
+			}
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				for (Future<Edges> f : executor.invokeAll(tasks)) {
+					edges.add(f.get());
+				}
+			} finally {
+				executor.shutdown();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new Error("interrupted during generation");
+		} catch (ExecutionException e) {
+			throw new Error("generation failed", e.getCause());
+		} catch (Exception e) {
+			throw new Error("generation failed", e);
+		}
+		return edges;
+	}
+
+	private static Graph build(int order, List<Edges> edges) {
+		int max = 0;
+		for (Edges e : edges) {
+			max = Math.max(max, e.size);
+		}
+		GraphBuilder builder = new GraphBuilder(order);
+		for (int n = 0; n < order; n++) {
+			builder.addNode(n);
+		}
+		int[] ones = new int[max];
+		Arrays.fill(ones, 1);
+		for (Edges e : edges) {
+			builder.insertEdgesSym(e.n1s, e.n2s, ones, e.size);
+		}
+		return builder.build();
+	}
+
+	private static void checkProbability(double p) {
+		if (!(p >= 0 && p <= 1))
+			throw new IllegalArgumentException("not a probability: " + p);
+	}
+
+	// a growable list of undirected edges
+	static class Edges {
+		int[] n1s = new int[16], n2s = new int[16];
+		int size = 0;
+
+		void add(int n1, int n2) {
+			if (size == n1s.length) {
+				n1s = Arrays.copyOf(n1s, size * 2);
+				n2s = Arrays.copyOf(n2s, size * 2);
+			}
+			n1s[size] = n1;
+			n2s[size] = n2;
+			size++;
+		}
+	}
+
+	/*
+	 * Samples the pairs (v, colStart + w) for rows v in [rowFrom, rowTo), where w
+	 * runs over cols columns, or over v - colStart columns for a block's lower
+	 * triangle (cols < 0), jumping from edge to edge with geometric skips.
+	 */
+	static class Sampler implements Callable<Edges> {
+		private final int rowFrom, rowTo, colStart, cols;
+		private final double p;
+		private final SplittableRandom rnd;
+
+		Sampler(int rowFrom, int rowTo, int colStart, int cols, double p, SplittableRandom rnd) {
+			this.rowFrom = rowFrom;
+			this.rowTo = rowTo;
+			this.colStart = colStart;
+			this.cols = cols;
+			this.p = p;
+			this.rnd = rnd;
+		}
+
+		private long rowLength(int v) {
+			return cols >= 0 ? cols : v - colStart;
+		}
+
+		public Edges call() {
+			Edges edges = new Edges();
+			long left = 0; // pairs not yet passed
+			for (int v = rowFrom; v < rowTo; v++)
+				left += rowLength(v);
+			double logq = Math.log(1 - p);
+			int v = rowFrom;
+			long w = -1;
+			while (true) {
+				double skip = p >= 1 ? 0 : Math.floor(Math.log(1 - rnd.nextDouble()) / logq);
+				if (skip >= left)
+					break;
+				left -= (long) skip + 1;
+				w += (long) skip + 1;
+				while (w >= rowLength(v)) {
+					w -= rowLength(v);
+					v++;
+				}
+				edges.add(v, colStart + (int) w);
+			}
+			return edges;
+		}
+	}
+
+	/*
+	 * Pairs up shuffled stubs. Self-pairs, repeats of an edge already made and,
+	 * if communities is given, pairs inside a community are rejected, and the
+	 * rejected stubs are shuffled and paired again for a few rounds.
+	 */
+	static class Wiring implements Callable<Edges> {
+		private static final int ROUNDS = 8;
+		private final int[] stubs;
+		private final int[] communities;
+		private final SplittableRandom rnd;
+
+		Wiring(int[] stubs, int[] communities, SplittableRandom rnd) {
+			this.stubs = stubs;
+			this.communities = communities;
+			this.rnd = rnd;
+		}
+
+		public Edges call() {
+			long[] keys = new long[stubs.length / 2]; // (smaller << 32 | larger) of each edge
+			int numKeys = 0;
+			int[] pool = stubs;
+			int poolSize = stubs.length;
+			for (int round = 0; round < ROUNDS && poolSize > 1; round++) {
+				for (int i = poolSize; i > 1; i--) {
+					int r = rnd.nextInt(i);
+					int temp = pool[i - 1];
+					pool[i - 1] = pool[r];
+					pool[r] = temp;
+				}
+				int rejected = 0;
+				int added = numKeys;
+				for (int i = 0; i + 1 < poolSize; i += 2) {
+					int n1 = pool[i], n2 = pool[i + 1];
+					if (n1 == n2 || (communities != null && communities[n1] == communities[n2])) {
+						pool[rejected++] = n1;
+						pool[rejected++] = n2;
+					} else {
+						keys[numKeys++] = (long) Math.min(n1, n2) << 32 | Math.max(n1, n2);
+					}
+				}
+				// drop repeated edges, returning their stubs to the pool
+				Arrays.sort(keys, 0, numKeys);
+				int unique = 0;
+				for (int i = 0; i < numKeys; i++) {
+					if (unique > 0 && keys[unique - 1] == keys[i]) {
+						pool[rejected++] = (int) (keys[i] >>> 32);
+						pool[rejected++] = (int) keys[i];
+					} else {
+						keys[unique++] = keys[i];
+					}
+				}
+				numKeys = unique;
+				if (numKeys == added && rejected == poolSize)
+					break; // no progress
+				poolSize = rejected;
+			}
+
+			Edges edges = new Edges();
+			for (int i = 0; i < numKeys; i++) {
+				edges.add((int) (keys[i] >>> 32), (int) keys[i]);
+			}
+			return edges;
+		}
+	}
+
+	// a discrete power law, P(k) proportional to k^-exponent on [min, max]
+	static class PowerLaw {
+		private final int min;
+		private final double[] cdf;
+
+		PowerLaw(int min, int max, double exponent) {
+			this.min = min;
+			cdf = new double[max - min + 1];
+			double sum = 0d;
+			for (int k = min; k <= max; k++) {
+				sum += Math.pow(k, -exponent);
+				cdf[k - min] = sum;
+			}
+			for (int i = 0; i < cdf.length; i++)
+				cdf[i] /= sum;
+		}
+
+		double mean() {
+			double mean = 0d;
+			for (int i = 0; i < cdf.length; i++)
+				mean += (min + i) * (cdf[i] - (i == 0 ? 0d : cdf[i - 1]));
+			return mean;
+		}
+
+		int sample(SplittableRandom rnd) {
+			int i = Arrays.binarySearch(cdf, rnd.nextDouble());
+			return min + Math.min(cdf.length - 1, i >= 0 ? i : -i - 1);
+		}
+	}
+}
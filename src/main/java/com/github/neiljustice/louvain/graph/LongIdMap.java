@@ -0,0 +1,115 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.graph;
+
+import java.util.*;
+
+/**
+ * Numbers 64-bit node ids densely from 0, in the order they are added, and maps
+ * both ways without boxing. The hash table uses open addressing with linear
+ * probing and holds only node numbers; the ids themselves are kept once, in
+ * node order, so it takes about 16 bytes per id.
+ */
+public class LongIdMap {
+	private long[] ids; // id of each node
+	private int[] slots; // node + 1 in each used slot, 0 if empty
+	private int size = 0;
+
+	public LongIdMap() {
+		this(16);
+	}
+
+	public LongIdMap(int expected) {
+		ids = new long[Math.max(16, expected)];
+		slots = new int[tableSize(ids.length)];
+	}
+
+	// a power of two at least twice the number of ids, so the load stays <= 1/2
+	private static int tableSize(int capacity) {
+		return Integer.highestOneBit(Math.max(16, capacity) * 2 - 1) * 2;
+	}
+
+	private static int hash(long id) {
+		long h = id * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// node of id, or -1 if it has none
+	public int get(long id) {
+		int mask = slots.length - 1;
+		for (int i = hash(id) & mask;; i = (i + 1) & mask) {
+			int slot = slots[i];
+			if (slot == 0)
+				return -1;
+			if (ids[slot - 1] == id)
+				return slot - 1;
+		}
+	}
+
+	// node of id, numbering it next if it is new
+	public int add(long id) {
+		int mask = slots.length - 1;
+		int i = hash(id) & mask;
+		for (int slot; (slot = slots[i]) != 0; i = (i + 1) & mask) {
+			if (ids[slot - 1] == id)
+				return slot - 1;
+		}
+		if (size == ids.length) {
+			ids = Arrays.copyOf(ids, size * 2);
+			rehash(tableSize(ids.length));
+			return add(id);
+		}
+		ids[size] = id;
+		slots[i] = ++size;
+		return size - 1;
+	}
+
+	public long id(int node) {
+		if (node >= size)
+			throw new IndexOutOfBoundsException("Node: " + node + ", ids: " + size);
+		return ids[node];
+	}
+
+	public LongIdMap copy() {
+		LongIdMap copy = new LongIdMap(0);
+		copy.ids = ids.clone();
+		copy.slots = slots.clone();
+		copy.size = size;
+		return copy;
+	}
+
+	private void rehash(int tableSize) {
+		slots = new int[tableSize];
+		int mask = tableSize - 1;
+		for (int node = 0; node < size; node++) {
+			int i = hash(ids[node]) & mask;
+			while (slots[i] != 0)
+				i = (i + 1) & mask;
+			slots[i] = node + 1;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.graph;
+
+/**
+ * A generated graph together with the communities planted in it, for checking
+ * the quality and speed of a clustering against a known answer.
+ */
+public class PlantedGraph {
+	private final Graph graph;
+	private final int[] communities;
+
+	PlantedGraph(Graph graph, int[] communities) {
+		this.graph = graph;
+		this.communities = communities;
+	}
+
+	public Graph graph() {
+		return graph;
+	}
+
+	// planted community of each node
+	public int[] communities() {
+		return communities;
+	}
+
+	public int numCommunities() {
+		int max = -1;
+		for (int comm : communities) {
+			max = Math.max(max, comm);
+		}
+		return max + 1;
+	}
+}
@@ -0,0 +1,154 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.graph;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Numbers string node ids, such as URLs, densely from 0 in the order they are
+ * added. Each distinct id is stored once as UTF-8 in a shared byte arena rather
+ * than as a String, and looked up through an open-addressing table of node
+ * numbers, so interning an id already seen allocates nothing when it is given
+ * as bytes.
+ */
+public class StringIdMap {
+	private byte[] arena = new byte[1024];
+	private int arenaSize = 0;
+	private int[] starts = new int[17]; // node's bytes are arena[starts[node], starts[node + 1])
+	private int[] hashes = new int[16]; // of each node's bytes
+	private int[] slots = new int[32]; // node + 1 in each used slot, 0 if empty
+	private int size = 0;
+
+	private static int hash(byte[] a, int off, int len) {
+		int h = 0x811C9DC5;
+		for (int i = off; i < off + len; i++) {
+			h = (h ^ a[i]) * 0x01000193;
+		}
+		return h ^ (h >>> 16);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// node of an id held as UTF-8 in id[off, off + len), or -1 if it has none
+	public int get(byte[] id, int off, int len) {
+		return find(id, off, len, hash(id, off, len));
+	}
+
+	public int get(String id) {
+		byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+		return get(bytes, 0, bytes.length);
+	}
+
+	// node of an id held as UTF-8 in id[off, off + len), numbering it next if new
+	public int add(byte[] id, int off, int len) {
+		int h = hash(id, off, len);
+		int node = find(id, off, len, h);
+		if (node >= 0)
+			return node;
+
+		if (size == hashes.length) {
+			hashes = Arrays.copyOf(hashes, size * 2);
+			starts = Arrays.copyOf(starts, size * 2 + 1);
+			rehash(size * 4);
+		}
+		if (arenaSize + len > arena.length) {
+			long capacity = Math.max(arenaSize + (long) len, 2L * arena.length);
+			if (capacity > Integer.MAX_VALUE - 8)
+				throw new Error("too many id bytes for one arena: " + capacity);
+			arena = Arrays.copyOf(arena, (int) capacity);
+		}
+		System.arraycopy(id, off, arena, arenaSize, len);
+		arenaSize += len;
+		hashes[size] = h;
+		starts[size + 1] = arenaSize;
+		insert(size);
+		return size++;
+	}
+
+	// numbers a node of another map here, copying its bytes without a String
+	int add(StringIdMap other, int node) {
+		return add(other.arena, other.starts[node], other.starts[node + 1] - other.starts[node]);
+	}
+
+	public int add(String id) {
+		byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+		return add(bytes, 0, bytes.length);
+	}
+
+	public String id(int node) {
+		if (node >= size)
+			throw new IndexOutOfBoundsException("Node: " + node + ", ids: " + size);
+		return new String(arena, starts[node], starts[node + 1] - starts[node], StandardCharsets.UTF_8);
+	}
+
+	public StringIdMap copy() {
+		StringIdMap copy = new StringIdMap();
+		copy.arena = Arrays.copyOf(arena, arenaSize);
+		copy.arenaSize = arenaSize;
+		copy.starts = starts.clone();
+		copy.hashes = hashes.clone();
+		copy.slots = slots.clone();
+		copy.size = size;
+		return copy;
+	}
+
+	private int find(byte[] id, int off, int len, int h) {
+		int mask = slots.length - 1;
+		for (int i = h & mask;; i = (i + 1) & mask) {
+			int slot = slots[i];
+			if (slot == 0)
+				return -1;
+			if (hashes[slot - 1] == h && equals(slot - 1, id, off, len))
+				return slot - 1;
+		}
+	}
+
+	private boolean equals(int node, byte[] id, int off, int len) {
+		int start = starts[node];
+		if (starts[node + 1] - start != len)
+			return false;
+		for (int i = 0; i < len; i++) {
+			if (arena[start + i] != id[off + i])
+				return false;
+		}
+		return true;
+	}
+
+	private void insert(int node) {
+		int mask = slots.length - 1;
+		int i = hashes[node] & mask;
+		while (slots[i] != 0)
+			i = (i + 1) & mask;
+		slots[i] = node + 1;
+	}
+
+	private void rehash(int tableSize) {
+		slots = new int[tableSize];
+		for (int node = 0; node < size; node++) {
+			insert(node);
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.util;
+
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+
+/**
+ * A fixed-length array of ints, held either on the Java heap or outside it in
+ * direct or memory-mapped buffers. Off-heap arrays are split into chunks of
+ * 2^28 ints (1GB) so they can grow past the size limit of a single buffer.
+ */
+public abstract class IntArray {
+	static final int CHUNK_SHIFT = 28;
+	static final int CHUNK_INTS = 1 << CHUNK_SHIFT;
+	static final long CHUNK_MASK = CHUNK_INTS - 1;
+
+	public abstract int get(long i);
+
+	public abstract void set(long i, int val);
+
+	public abstract long length();
+
+	public abstract boolean isOffHeap();
+
+	public void add(long i, int val) {
+		set(i, get(i) + val);
+	}
+
+	public void fill(int val) {
+		for (long i = 0; i < length(); i++)
+			set(i, val);
+	}
+
+	// copies len values from position from into dst at dstPos
+	public void get(long from, int[] dst, int dstPos, int len) {
+		for (int i = 0; i < len; i++)
+			dst[dstPos + i] = get(from + i);
+	}
+
+	public static IntArray wrap(int[] a) {
+		return new Heap(a);
+	}
+
+	public static IntArray allocate(long length, boolean offHeap) {
+		if (offHeap)
+			return new OffHeap(length);
+		if (length > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("too long for the heap: " + length);
+		return new Heap(new int[(int) length]);
+	}
+
+	// an array with the contents of a, off the heap if asked
+	public static IntArray copyOf(int[] a, boolean offHeap) {
+		if (!offHeap)
+			return wrap(a);
+		IntArray copy = new OffHeap(a.length);
+		for (int i = 0; i < a.length; i += CHUNK_INTS)
+			((OffHeap) copy).chunks[i >>> CHUNK_SHIFT].put(a, i, Math.min(CHUNK_INTS, a.length - i));
+		return copy;
+	}
+
+	// copies len values from src to dst, in bulk when both are on the heap
+	public static void copy(IntArray src, long srcPos, IntArray dst, long dstPos, long len) {
+		if (src instanceof Heap && dst instanceof Heap) {
+			System.arraycopy(((Heap) src).a, (int) srcPos, ((Heap) dst).a, (int) dstPos, (int) len);
+			return;
+		}
+		for (long i = 0; i < len; i++)
+			dst.set(dstPos + i, src.get(srcPos + i));
+	}
+
+	/**
+	 * Maps length little-endian ints of a file, starting at byte pos, read-only.
+	 * The pages are shared with every other process mapping the same file.
+	 */
+	public static IntArray map(FileChannel channel, long pos, long length) throws IOException {
+		return new OffHeap(channel, pos, length);
+	}
+
+	static class Heap extends IntArray {
+		private final int[] a;
+
+		Heap(int[] a) {
+			this.a = a;
+		}
+
+		public int get(long i) {
+			return a[(int) i];
+		}
+
+		public void set(long i, int val) {
+			a[(int) i] = val;
+		}
+
+		public void add(long i, int val) {
+			a[(int) i] += val;
+		}
+
+		public long length() {
+			return a.length;
+		}
+
+		public boolean isOffHeap() {
+			return false;
+		}
+
+		public void fill(int val) {
+			java.util.Arrays.fill(a, val);
+		}
+
+		public void get(long from, int[] dst, int dstPos, int len) {
+			System.arraycopy(a, (int) from, dst, dstPos, len);
+		}
+	}
+
+	static class OffHeap extends IntArray {
+		private final IntBuffer[] chunks;
+		private final long length;
+
+		OffHeap(long length) {
+			this.length = length;
+			chunks = new IntBuffer[(int) ((length + CHUNK_INTS - 1) >>> CHUNK_SHIFT)];
+			for (int c = 0; c < chunks.length; c++) {
+				int ints = (int) Math.min(CHUNK_INTS, length - ((long) c << CHUNK_SHIFT));
+				chunks[c] = ByteBuffer.allocateDirect(4 * ints).order(ByteOrder.nativeOrder()).asIntBuffer();
+			}
+		}
+
+		OffHeap(FileChannel channel, long pos, long length) throws IOException {
+			this.length = length;
+			chunks = new IntBuffer[(int) ((length + CHUNK_INTS - 1) >>> CHUNK_SHIFT)];
+			for (int c = 0; c < chunks.length; c++) {
+				long start = (long) c << CHUNK_SHIFT;
+				int ints = (int) Math.min(CHUNK_INTS, length - start);
+				chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, pos + 4 * start, 4L * ints)
+						.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			}
+		}
+
+		public int get(long i) {
+			return chunks[(int) (i >>> CHUNK_SHIFT)].get((int) (i & CHUNK_MASK));
+		}
+
+		public void set(long i, int val) {
+			chunks[(int) (i >>> CHUNK_SHIFT)].put((int) (i & CHUNK_MASK), val);
+		}
+
+		public long length() {
+			return length;
+		}
+
+		public boolean isOffHeap() {
+			return true;
+		}
+
+		public void get(long from, int[] dst, int dstPos, int len) {
+			while (len > 0) {
+				IntBuffer chunk = chunks[(int) (from >>> CHUNK_SHIFT)];
+				int at = (int) (from & CHUNK_MASK);
+				int n = Math.min(len, CHUNK_INTS - at);
+				IntBuffer view = chunk.duplicate();
+				((Buffer) view).position(at);
+				view.get(dst, dstPos, n);
+				from += n;
+				dstPos += n;
+				len -= n;
+			}
+		}
+	}
+}
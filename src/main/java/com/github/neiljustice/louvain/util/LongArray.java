@@ -0,0 +1,237 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.util;
+
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+
+/**
+ * A fixed-length array of longs. It is either backed by longs, on or off the
+ * heap, or is a view of an IntArray, so that graphs whose values fit in 32 bits
+ * keep the compact layout and only large graphs pay for 64-bit storage.
+ */
+public abstract class LongArray {
+	static final int CHUNK_SHIFT = 27;
+	static final int CHUNK_LONGS = 1 << CHUNK_SHIFT;
+	static final long CHUNK_MASK = CHUNK_LONGS - 1;
+
+	public abstract long get(long i);
+
+	public abstract void set(long i, long val);
+
+	public abstract long length();
+
+	public abstract boolean isOffHeap();
+
+	// true if backed by longs rather than a view of ints
+	public abstract boolean isWide();
+
+	public void add(long i, long val) {
+		set(i, get(i) + val);
+	}
+
+	// the backing ints of an array that is not wide
+	public IntArray ints() {
+		throw new IllegalStateException("array is backed by longs");
+	}
+
+	public void fill(long val) {
+		for (long i = 0; i < length(); i++)
+			set(i, val);
+	}
+
+	public static LongArray wrap(long[] a) {
+		return new Heap(a);
+	}
+
+	// a view of ints; storing a value outside the int range throws
+	public static LongArray of(IntArray a) {
+		return new Ints(a);
+	}
+
+	public static LongArray allocate(long length, boolean offHeap, boolean wide) {
+		if (!wide)
+			return of(IntArray.allocate(length, offHeap));
+		if (offHeap)
+			return new OffHeap(length);
+		if (length > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("too long for the heap: " + length);
+		return new Heap(new long[(int) length]);
+	}
+
+	// an array with the contents of a, narrowed to ints unless wide
+	public static LongArray copyOf(long[] a, boolean offHeap, boolean wide) {
+		if (wide && !offHeap)
+			return wrap(a);
+		LongArray copy = allocate(a.length, offHeap, wide);
+		for (int i = 0; i < a.length; i++)
+			copy.set(i, a[i]);
+		return copy;
+	}
+
+	// copies len values from src to dst, in bulk when both have the same backing on the heap
+	public static void copy(LongArray src, long srcPos, LongArray dst, long dstPos, long len) {
+		if (src instanceof Heap && dst instanceof Heap) {
+			System.arraycopy(((Heap) src).a, (int) srcPos, ((Heap) dst).a, (int) dstPos, (int) len);
+			return;
+		}
+		if (src instanceof Ints && dst instanceof Ints) {
+			IntArray.copy(((Ints) src).a, srcPos, ((Ints) dst).a, dstPos, len);
+			return;
+		}
+		for (long i = 0; i < len; i++)
+			dst.set(dstPos + i, src.get(srcPos + i));
+	}
+
+	/**
+	 * Maps length little-endian longs of a file, starting at byte pos, read-only.
+	 * The pages are shared with every other process mapping the same file.
+	 */
+	public static LongArray map(FileChannel channel, long pos, long length) throws IOException {
+		return new OffHeap(channel, pos, length);
+	}
+
+	static class Heap extends LongArray {
+		private final long[] a;
+
+		Heap(long[] a) {
+			this.a = a;
+		}
+
+		public long get(long i) {
+			return a[(int) i];
+		}
+
+		public void set(long i, long val) {
+			a[(int) i] = val;
+		}
+
+		public void add(long i, long val) {
+			a[(int) i] += val;
+		}
+
+		public long length() {
+			return a.length;
+		}
+
+		public boolean isOffHeap() {
+			return false;
+		}
+
+		public boolean isWide() {
+			return true;
+		}
+
+		public void fill(long val) {
+			java.util.Arrays.fill(a, val);
+		}
+	}
+
+	static class Ints extends LongArray {
+		private final IntArray a;
+
+		Ints(IntArray a) {
+			this.a = a;
+		}
+
+		public long get(long i) {
+			return a.get(i);
+		}
+
+		public void set(long i, long val) {
+			a.set(i, narrow(val));
+		}
+
+		public long length() {
+			return a.length();
+		}
+
+		public boolean isOffHeap() {
+			return a.isOffHeap();
+		}
+
+		public boolean isWide() {
+			return false;
+		}
+
+		public void fill(long val) {
+			a.fill(narrow(val));
+		}
+
+		public IntArray ints() {
+			return a;
+		}
+
+		private static int narrow(long val) {
+			if (val != (int) val)
+				throw new ArithmeticException("value needs 64 bits: " + val);
+			return (int) val;
+		}
+	}
+
+	static class OffHeap extends LongArray {
+		private final LongBuffer[] chunks;
+		private final long length;
+
+		OffHeap(long length) {
+			this.length = length;
+			chunks = new LongBuffer[(int) ((length + CHUNK_LONGS - 1) >>> CHUNK_SHIFT)];
+			for (int c = 0; c < chunks.length; c++) {
+				int longs = (int) Math.min(CHUNK_LONGS, length - ((long) c << CHUNK_SHIFT));
+				chunks[c] = ByteBuffer.allocateDirect(8 * longs).order(ByteOrder.nativeOrder()).asLongBuffer();
+			}
+		}
+
+		OffHeap(FileChannel channel, long pos, long length) throws IOException {
+			this.length = length;
+			chunks = new LongBuffer[(int) ((length + CHUNK_LONGS - 1) >>> CHUNK_SHIFT)];
+			for (int c = 0; c < chunks.length; c++) {
+				long start = (long) c << CHUNK_SHIFT;
+				int longs = (int) Math.min(CHUNK_LONGS, length - start);
+				chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, pos + 8 * start, 8L * longs)
+						.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+			}
+		}
+
+		public long get(long i) {
+			return chunks[(int) (i >>> CHUNK_SHIFT)].get((int) (i & CHUNK_MASK));
+		}
+
+		public void set(long i, long val) {
+			chunks[(int) (i >>> CHUNK_SHIFT)].put((int) (i & CHUNK_MASK), val);
+		}
+
+		public long length() {
+			return length;
+		}
+
+		public boolean isOffHeap() {
+			return true;
+		}
+
+		public boolean isWide() {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.clustering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.github.neiljustice.louvain.graph.*;
+import java.util.*;
+
+public class EnsembleDetectorTest {
+
+	private static PlantedGraph blocks() {
+		int[] sizes = new int[8];
+		Arrays.fill(sizes, 30);
+		return new GraphGenerator(5).stochasticBlockModel(sizes, 0.4, 0.02);
+	}
+
+	@Test
+	public void checkBestRun() {
+		Graph g = new GraphGenerator(2).lfr(1000, 12, 40, 2, 20, 80, 1, 0.4).graph();
+		EnsembleDetector ensemble = new EnsembleDetector(g, 6, 1);
+		ensemble.setThreads(3);
+		List<int[]> best = ensemble.run();
+
+		double max = Double.NEGATIVE_INFINITY;
+		for (double modularity : ensemble.modularities()) {
+			max = Math.max(max, modularity);
+		}
+		assertEquals(ensemble.modularity(), max, 0d);
+
+		LouvainDetector detector = new LouvainDetector(g, ensemble.seed(ensemble.bestRun()));
+		List<int[]> expected = detector.run();
+		assertEquals(detector.modularity(), max, 0d);
+		assertEquals(best.size(), expected.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertTrue(Arrays.equals(best.get(i), expected.get(i)));
+		}
+		assertEquals(ensemble.consensus(), null);
+	}
+
+	@Test
+	public void checkConsensus() {
+		PlantedGraph planted = blocks();
+		List<int[]> consensus = null;
+		for (int threads = 1; threads <= 3; threads += 2) {
+			EnsembleDetector ensemble = new EnsembleDetector(planted.graph(), 8, 1);
+			ensemble.setThreads(threads);
+			ensemble.setConsensus(0.5);
+			ensemble.run();
+			List<int[]> layers = ensemble.consensus();
+			if (consensus != null)
+				assertTrue(Arrays.equals(layers.get(layers.size() - 1), consensus.get(consensus.size() - 1)));
+			consensus = layers;
+		}
+
+		// the planted blocks are recovered exactly
+		int[] found = consensus.get(consensus.size() - 1);
+		Map<Integer, Integer> blockOf = new HashMap<Integer, Integer>();
+		for (int n = 0; n < found.length; n++) {
+			Integer block = blockOf.put(found[n], planted.communities()[n]);
+			assertTrue(block == null || block == planted.communities()[n]);
+		}
+		assertEquals(blockOf.size(), planted.numCommunities());
+	}
+}
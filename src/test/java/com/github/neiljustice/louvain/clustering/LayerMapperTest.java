@@ -32,6 +32,9 @@ import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import com.github.neiljustice.louvain.graph.*;
+import java.util.*;
+
 public class LayerMapperTest {
   
   @BeforeClass
@@ -39,9 +42,30 @@ public class LayerMapperTest {
     
   }
 
-  // @Test
-  // public void check() {
-  //   
-  // }
+  @Test
+  public void checkHierarchy() {
+    Graph g = new GraphGenerator(4).lfr(2000, 12, 40, 2, 20, 80, 1, 0.3).graph();
+    LouvainDetector detector = new LouvainDetector(g, 1);
+    detector.run();
+    Hierarchy hierarchy = detector.hierarchy();
+    assertTrue(hierarchy.size() > 1);
+    assertEquals(hierarchy.order(), g.order());
+
+    for (int layer = 0; layer < hierarchy.size(); layer++) {
+      int[] communities = hierarchy.get(layer);
+      assertTrue(hierarchy.get(layer) == communities); // built once
+      for (int node = 0; node < g.order(); node++) {
+        assertEquals(hierarchy.community(layer, node), communities[node]);
+      }
+    }
 
+    // each layer's communities are unions of those of the layer below
+    for (int layer = 1; layer < hierarchy.size(); layer++) {
+      Map<Integer, Integer> above = new HashMap<Integer, Integer>();
+      for (int node = 0; node < g.order(); node++) {
+        Integer comm = above.put(hierarchy.get(layer - 1)[node], hierarchy.get(layer)[node]);
+        assertTrue(comm == null || comm == hierarchy.get(layer)[node]);
+      }
+    }
+  }
 }
@@ -0,0 +1,382 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.clustering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.github.neiljustice.louvain.graph.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class LouvainDetectorTest {
+	private static final int CLIQUES = 12;
+	private static final int CLIQUE_SIZE = 6;
+	private static double sequentialModularity;
+
+	// a ring of cliques, each joined to the next by a single edge
+	private static Graph ringOfCliques() {
+		int order = CLIQUES * CLIQUE_SIZE;
+		GraphBuilder builder = new GraphBuilder(order);
+		for (int i = 0; i < order; ++i) {
+			builder.addNode(i);
+		}
+		for (int c = 0; c < CLIQUES; c++) {
+			int first = c * CLIQUE_SIZE;
+			for (int i = first; i < first + CLIQUE_SIZE; i++) {
+				for (int j = i + 1; j < first + CLIQUE_SIZE; j++) {
+					builder.addEdgeSym(i, j, 1);
+				}
+			}
+			builder.addEdgeSym(first, (first + CLIQUE_SIZE) % order, 1);
+		}
+		return builder.build();
+	}
+
+	private static int numCommunities(int[] communities) {
+		Set<Integer> distinct = new HashSet<Integer>();
+		for (int comm : communities) {
+			distinct.add(comm);
+		}
+		return distinct.size();
+	}
+
+	@BeforeClass
+	public static void init() {
+		LouvainDetector detector = new LouvainDetector(ringOfCliques(), 1);
+		detector.run();
+		sequentialModularity = detector.modularity();
+	}
+
+	@Test
+	public void checkFindsCliques() {
+		LouvainDetector detector = new LouvainDetector(ringOfCliques(), 1);
+		List<int[]> communities = detector.run();
+		int[] base = communities.get(0);
+		for (int c = 0; c < CLIQUES; c++) {
+			for (int i = 1; i < CLIQUE_SIZE; i++) {
+				assertEquals(base[c * CLIQUE_SIZE + i], base[c * CLIQUE_SIZE]);
+			}
+		}
+		assertTrue(sequentialModularity > 0.7);
+	}
+
+	// large enough that sweeps are split into batches across the workers
+	private static Graph lfr() {
+		return new GraphGenerator(13).lfr(5000, 8, 15, 2, 20, 100, 1, 0.2).graph();
+	}
+
+	@Test
+	public void checkParallel() {
+		LouvainDetector detector = new LouvainDetector(ringOfCliques(), 1);
+		detector.setThreads(4);
+		detector.run();
+		assertEquals(detector.modularity(), sequentialModularity, 0.05);
+	}
+
+	@Test
+	public void checkParallelLarge() {
+		Graph g = lfr();
+		LouvainDetector sequential = new LouvainDetector(g, 1);
+		sequential.run();
+		LouvainDetector parallel = new LouvainDetector(g, 1);
+		parallel.setThreads(4);
+		parallel.run();
+		assertEquals(parallel.modularity(), sequential.modularity(), 0.02);
+
+		// the sums kept by concurrent moves match those counted afresh
+		Graph.Partitioning p = parallel.basePartitioning();
+		Graph.Partitioning fresh = g.newPartitioning(p.communities());
+		assertEquals(p.numComms(), fresh.numComms());
+		for (int c = 0; c < g.order(); c++) {
+			assertEquals(p.totDegree(c), fresh.totDegree(c));
+			assertEquals(p.intDegree(c), fresh.intDegree(c));
+		}
+		assertEquals(p.modularity(), fresh.modularity(), 1e-12);
+	}
+
+	@Test
+	public void checkQueueSweeps() {
+		LouvainDetector detector = new LouvainDetector(ringOfCliques(), 1);
+		detector.setSweepStrategy(SweepStrategy.QUEUE);
+		detector.run();
+		assertEquals(detector.modularity(), sequentialModularity, 0.05);
+	}
+
+	@Test
+	public void checkConvergencePolicy() {
+		LouvainDetector detector = new LouvainDetector(ringOfCliques(), 1);
+		detector.setConvergencePolicy(new ConvergencePolicy(new double[] { 0.01 }, 1, 0d));
+		detector.run();
+		for (LayerReport report : detector.layerReports()) {
+			assertEquals(report.sweeps(), 1);
+			assertTrue(report.estimatedForgoneGain() >= 0d);
+		}
+		assertTrue(detector.estimatedForgoneGain() >= 0d);
+		assertEquals(ConvergencePolicy.schedule(0.01, 0.0001, 0.1).epsilon(5), 0.0001, 1e-12);
+	}
+
+	@Test
+	public void checkEpsilonStopsLayer() {
+		Graph g = lfr();
+		LouvainDetector loose = new LouvainDetector(g, 1);
+		loose.setConvergencePolicy(new ConvergencePolicy(new double[] { 0.01, ConvergencePolicy.DEFAULT_EPSILON }, 20, 0d));
+		loose.run();
+		LayerReport report = loose.layerReports().get(0);
+		assertEquals(report.stopReason(), LayerReport.StopReason.CONVERGED);
+		assertTrue(report.sweeps() < 20);
+		assertTrue(report.lastGain() > 0d && report.lastGain() <= 0.01);
+		assertTrue(report.stoppedEarly());
+		assertEquals(report.estimatedForgoneGain(), report.lastGain(), 0d);
+
+		LouvainDetector strict = new LouvainDetector(g, 1);
+		strict.run();
+		assertTrue(strict.layerReports().get(0).sweeps() > report.sweeps());
+	}
+
+	@Test
+	public void checkDeterministic() {
+		LouvainDetector d1 = new LouvainDetector(ringOfCliques(), 7);
+		d1.setDeterministic(true);
+		List<int[]> c1 = d1.run();
+		LouvainDetector d4 = new LouvainDetector(ringOfCliques(), 7);
+		d4.setDeterministic(true);
+		d4.setThreads(4);
+		List<int[]> c4 = d4.run();
+
+		assertEquals(c1.size(), c4.size());
+		for (int i = 0; i < c1.size(); i++) {
+			assertTrue(Arrays.equals(c1.get(i), c4.get(i)));
+		}
+		assertEquals(d1.modularity(), d4.modularity(), 0d);
+	}
+
+	// a greedy colouring of degrees up to 15 has at most 16 colours, so some
+	// colour class of the 5000 nodes holds over 256 and is swept in batches
+	@Test
+	public void checkDeterministicLarge() {
+		Graph g = lfr();
+		LouvainDetector d1 = new LouvainDetector(g, 7);
+		d1.setDeterministic(true);
+		List<int[]> c1 = d1.run();
+		for (int threads : new int[] { 2, 4 }) {
+			LouvainDetector d = new LouvainDetector(g, 7);
+			d.setDeterministic(true);
+			d.setThreads(threads);
+			List<int[]> c = d.run();
+
+			assertEquals(c1.size(), c.size());
+			for (int i = 0; i < c1.size(); i++) {
+				assertTrue(Arrays.equals(c1.get(i), c.get(i)));
+			}
+			assertEquals(d1.modularity(), d.modularity(), 0d);
+		}
+	}
+
+	@Test
+	public void checkUpdate() {
+		int order = CLIQUES * CLIQUE_SIZE;
+		EdgeBatch batch = new EdgeBatch();
+		for (int i = order; i < order + CLIQUE_SIZE; i++) {
+			for (int j = i + 1; j < order + CLIQUE_SIZE; j++) {
+				batch.insert(i, j, 1);
+			}
+		}
+		batch.insert(order, 0, 1);
+		batch.delete(0, CLIQUE_SIZE);
+
+		LouvainDetector detector = new LouvainDetector(ringOfCliques(), 1);
+		detector.run();
+		final List<SweepReport> sweeps = new ArrayList<SweepReport>();
+		detector.addListener(new LouvainListener() {
+			public void sweepDone(SweepReport report) {
+				sweeps.add(report);
+			}
+
+			public void layerDone(LayerReport report) {
+			}
+		});
+		int[] base = detector.update(batch).get(0);
+		// only the new clique, the ends of the changed edges and their cliques
+		for (SweepReport sweep : sweeps) {
+			if (sweep.layer() == 0)
+				assertTrue(sweep.activeNodes() <= 4 * CLIQUE_SIZE);
+		}
+		assertEquals(base.length, order + CLIQUE_SIZE);
+		for (int c = 0; c <= CLIQUES; c++) {
+			for (int i = 1; i < CLIQUE_SIZE; i++) {
+				assertEquals(base[c * CLIQUE_SIZE + i], base[c * CLIQUE_SIZE]);
+			}
+		}
+		assertFalse(base[order] == base[0]);
+
+		LouvainDetector rerun = new LouvainDetector(new GraphBuilder(0).update(ringOfCliques(), batch), 1);
+		rerun.run();
+		assertEquals(detector.modularity(), rerun.modularity(), 0.05);
+	}
+
+	@Test
+	public void checkWarmStart() {
+		LouvainDetector first = new LouvainDetector(ringOfCliques(), 1);
+		List<int[]> previous = first.run();
+
+		LouvainDetector detector = new LouvainDetector(ringOfCliques(), 2);
+		detector.warmStart(previous.get(previous.size() - 1));
+		assertTrue(detector.layerReports().get(0).sweeps() <= 2);
+		assertTrue(detector.modularity() >= first.modularity() - 1e-9);
+	}
+
+	@Test
+	public void checkListener() {
+		final List<SweepReport> sweeps = new ArrayList<SweepReport>();
+		final List<LayerReport> layers = new ArrayList<LayerReport>();
+		LouvainDetector detector = new LouvainDetector(ringOfCliques(), 1);
+		detector.addListener(new LouvainListener() {
+			public void sweepDone(SweepReport report) {
+				sweeps.add(report);
+			}
+
+			public void layerDone(LayerReport report) {
+				layers.add(report);
+			}
+		});
+		detector.run();
+
+		assertEquals(layers, detector.layerReports());
+		int total = 0;
+		for (LayerReport layer : layers) {
+			total += layer.sweeps();
+			assertTrue(layer.movingNanos() > 0);
+		}
+		assertEquals(sweeps.size(), total);
+		assertEquals(layers.get(0).numEdges(), ringOfCliques().numEdges());
+		assertTrue(layers.get(0).coarseningNanos() > 0);
+		assertEquals(sweeps.get(0).activeNodes(), CLIQUES * CLIQUE_SIZE);
+		assertEquals(sweeps.get(sweeps.size() - 1).modularity(), detector.modularity(), 1e-12);
+	}
+
+	@Test
+	public void checkTimeBudget() {
+		for (int threads = 1; threads <= 2; threads++) {
+			LouvainDetector detector = new LouvainDetector(ringOfCliques(), 1);
+			detector.setThreads(threads);
+			detector.setTimeBudget(1, TimeUnit.NANOSECONDS);
+			List<int[]> communities = detector.run();
+
+			assertTrue(detector.isPartial());
+			assertEquals(detector.layerReports().size(), 1);
+			assertEquals(detector.layerReports().get(0).stopReason(), LayerReport.StopReason.DEADLINE);
+			assertEquals(communities.size(), 1);
+			assertEquals(numCommunities(communities.get(0)), CLIQUES * CLIQUE_SIZE);
+		}
+	}
+
+	@Test
+	public void checkCancel() {
+		final LouvainDetector detector = new LouvainDetector(ringOfCliques(), 1);
+		detector.addListener(new LouvainListener() {
+			public void layerDone(LayerReport report) {
+				detector.cancel();
+			}
+		});
+		List<int[]> communities = detector.run();
+
+		assertTrue(detector.isPartial());
+		List<LayerReport> reports = detector.layerReports();
+		assertEquals(reports.size(), 2);
+		assertEquals(reports.get(1).stopReason(), LayerReport.StopReason.CANCELLED);
+		assertEquals(communities.size(), 1);
+		assertEquals(numCommunities(communities.get(0)), reports.get(1).order());
+		assertEquals(detector.modularity(), reports.get(0).modularity(), 1e-12);
+	}
+
+	@Test
+	public void checkSharedGraph() throws Exception {
+		final Graph g = ringOfCliques();
+		final List<int[]> expected = new LouvainDetector(g, 1).run();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<List<int[]>>> results = new ArrayList<Future<List<int[]>>>();
+		for (int i = 0; i < 8; i++) {
+			results.add(executor.submit(new Callable<List<int[]>>() {
+				public List<int[]> call() {
+					return new LouvainDetector(g, 1).run();
+				}
+			}));
+		}
+		for (Future<List<int[]>> result : results) {
+			List<int[]> communities = result.get();
+			assertEquals(communities.size(), expected.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertTrue(Arrays.equals(communities.get(i), expected.get(i)));
+			}
+		}
+		executor.shutdown();
+
+		assertEquals(g.partitioning().numComms(), g.order()); // untouched by the runs
+	}
+
+	@Test
+	public void checkClusterIds() {
+		// the ring of cliques again, with 64-bit and string ids
+		GraphBuilder numbers = new GraphBuilder(0);
+		GraphBuilder names = new GraphBuilder(0);
+		Graph ring = ringOfCliques();
+		for (int n = 0; n < ring.order(); n++) {
+			numbers.addNode((1L << 40) + n);
+			names.addNode("node-" + n);
+		}
+		for (int n = 0; n < ring.order(); n++) {
+			for (long i = ring.neighbourStart(n); i < ring.neighbourEnd(n); i++) {
+				int neigh = ring.neighbour(i);
+				if (neigh > n) {
+					numbers.addEdgeSym((1L << 40) + n, (1L << 40) + neigh, 1);
+					names.addEdgeSym("node-" + n, "node-" + neigh, 1);
+				}
+			}
+		}
+
+		LouvainDetector detector = new LouvainDetector(numbers.build(), 1);
+		detector.run();
+		long[][] ids = detector.getClusterIds();
+		assertEquals(ids.length, CLIQUES);
+		for (long[] cluster : ids) {
+			assertEquals(cluster.length, CLIQUE_SIZE);
+			for (long id : cluster) {
+				assertEquals((id - (1L << 40)) / CLIQUE_SIZE, (cluster[0] - (1L << 40)) / CLIQUE_SIZE);
+			}
+		}
+
+		detector = new LouvainDetector(names.build(), 1);
+		detector.run();
+		String[][] clusters = detector.getClusterNames();
+		assertEquals(clusters.length, CLIQUES);
+		assertEquals(clusters[0][0], "node-0");
+		assertEquals(clusters[0].length, CLIQUE_SIZE);
+	}
+}
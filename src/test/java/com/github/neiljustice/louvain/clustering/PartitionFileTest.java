@@ -0,0 +1,104 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.clustering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.github.neiljustice.louvain.graph.*;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+
+public class PartitionFileTest {
+
+	private static List<int[]> hierarchy() {
+		Graph g = new GraphGenerator(6).lfr(3000, 12, 40, 2, 20, 80, 1, 0.3).graph();
+		List<int[]> communities = new ArrayList<int[]>(new LouvainDetector(g, 1).run());
+		communities.set(0, communities.get(0).clone());
+		communities.get(0)[5] = -123; // any int survives the trip
+		return communities;
+	}
+
+	private static void assertSameLayers(List<int[]> expected, PartitionReader reader) {
+		List<int[]> read = reader.run();
+		assertEquals(read.size(), expected.size());
+		assertEquals(reader.layers(), expected.size());
+		assertEquals(reader.order(), expected.get(0).length);
+		for (int layer = 0; layer < expected.size(); layer++) {
+			assertTrue(Arrays.equals(read.get(layer), expected.get(layer)));
+			assertEquals(reader.community(layer, 7), expected.get(layer)[7]);
+		}
+	}
+
+	@Test
+	public void checkText() throws Exception {
+		Path dir = Files.createTempDirectory("partitions");
+		List<int[]> communities = hierarchy();
+		new PartitionWriter(dir.toString() + "/").write(communities, "text.txt");
+		Path file = dir.resolve("text.txt");
+		try {
+			List<String> lines = Files.readAllLines(file, Charset.forName("UTF-8"));
+			assertEquals(lines.size(), communities.get(0).length);
+			StringBuilder line = new StringBuilder("5");
+			for (int[] layer : communities) {
+				line.append(':').append(layer[5]);
+			}
+			assertEquals(lines.get(5), line.toString());
+			assertSameLayers(communities, new PartitionReader(file.toString()));
+
+			// a last line without a newline, and Windows line ends
+			Files.write(file, "0:1:2\r\n1:1:3\r\n2:5:2".getBytes("UTF-8"));
+			PartitionReader reader = new PartitionReader(file.toString());
+			assertEquals(reader.order(), 3);
+			assertEquals(reader.community(1, 2), 2);
+			assertEquals(reader.community(0, 2), 5);
+		} finally {
+			Files.delete(file);
+			Files.delete(dir);
+		}
+	}
+
+	@Test
+	public void checkBinary() throws Exception {
+		Path dir = Files.createTempDirectory("partitions");
+		List<int[]> communities = hierarchy();
+		new PartitionWriter(dir.toString() + "/").writeBinary(communities, "layers.bin");
+		Path file = dir.resolve("layers.bin");
+		try {
+			assertEquals(Files.size(file), 16 + 4L * communities.size() * communities.get(0).length);
+			PartitionReader reader = new PartitionReader(file.toString());
+			assertTrue(reader.layer(0).isOffHeap()); // read in place
+			assertSameLayers(communities, reader);
+		} finally {
+			Files.delete(file);
+			Files.delete(dir);
+		}
+	}
+}
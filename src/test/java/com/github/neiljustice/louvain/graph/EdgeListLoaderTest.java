@@ -0,0 +1,180 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+
+public class EdgeListLoaderTest {
+	private static Path cliques;
+	private static Path arxiv;
+
+	@BeforeClass
+	public static void init() throws Exception {
+		cliques = Paths.get(EdgeListLoaderTest.class.getResource("/graphs/30-cliques.csv").toURI());
+		arxiv = Paths.get(EdgeListLoaderTest.class.getResource("/graphs/arxiv.txt").toURI());
+	}
+
+	@Test
+	public void checkTestGraphs() {
+		Graph g = new EdgeListLoader().load(cliques);
+		assertEquals(g.order(), 150);
+		assertEquals(g.size(), 330);
+		assertTrue(g.isSymmetric());
+
+		Graph a = new EdgeListLoader().load(arxiv);
+		assertEquals(a.order(), 9377);
+		assertEquals(a.size(), 24107); // each edge is listed both ways
+	}
+
+	@Test
+	public void checkFormatVariants() throws IOException {
+		Path file = Files.createTempFile("edges", ".txt");
+		try {
+			Files.write(file, "# comment\r\n-5 7\t3\r\n7,9\n\n9,-5,2".getBytes(Charset.forName("UTF-8")));
+			Graph g = new EdgeListLoader().load(file);
+			assertEquals(g.order(), 3);
+			assertEquals(g.size(), 6);
+			assertEquals(g.index().get(-5).intValue(), 0);
+			assertEquals(g.weight(g.index().get(7), g.index().get(9)), 1);
+			assertEquals(g.weight(g.index().get(9), g.index().get(-5)), 2);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void checkIdGaps() throws IOException {
+		Path file = Files.createTempFile("edges", ".txt");
+		try {
+			// 1-indexed, and without id 4: no node for either 0 or 4
+			Files.write(file, "1,2\n2,3\n3,5\n5,1\n".getBytes(Charset.forName("UTF-8")));
+			Graph g = new EdgeListLoader().load(file);
+			assertEquals(g.order(), 4);
+			assertEquals(g.index().get(1).intValue(), 0);
+			assertEquals(g.reverseIndex().get(3).intValue(), 5);
+			for (int n = 0; n < g.order(); n++) {
+				assertEquals(g.degree(n), 2);
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void checkParallel() throws IOException {
+		Graph sequential = new EdgeListLoader().load(arxiv);
+		EdgeListLoader loader = new EdgeListLoader();
+		loader.setThreads(3);
+		Graph parallel = loader.load(arxiv);
+		assertEquals(parallel.order(), sequential.order());
+		assertEquals(parallel.numEdges(), sequential.numEdges());
+		for (int i = 0; i < sequential.numEdges(); i++) {
+			assertEquals(parallel.neighbour(i), sequential.neighbour(i));
+		}
+
+		Path file = Files.createTempFile("edges", ".txt");
+		try {
+			Files.write(file, "1000000,5\n5,70000\n70000,1000000\n".getBytes(Charset.forName("UTF-8")));
+			Graph sparse = loader.load(file);
+			assertEquals(sparse.order(), 3);
+			assertEquals(sparse.index().get(5).intValue(), 0);
+			assertEquals(sparse.reverseIndex().get(2).intValue(), 1000000);
+			assertEquals(sparse.weight(1, 2), 1);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void checkOffHeap() {
+		Graph heap = new EdgeListLoader().load(arxiv);
+		EdgeListLoader loader = new EdgeListLoader();
+		loader.setOffHeap(true);
+		loader.setThreads(2);
+		Graph off = loader.load(arxiv);
+		assertTrue(off.isOffHeap());
+		assertEquals(off.order(), heap.order());
+		assertEquals(off.size(), heap.size());
+		for (int i = 0; i < heap.numEdges(); i++) {
+			assertEquals(off.neighbour(i), heap.neighbour(i));
+			assertEquals(off.neighbourWeight(i), heap.neighbourWeight(i));
+		}
+	}
+
+	@Test
+	public void checkLongIds() throws IOException {
+		Path file = Files.createTempFile("edges", ".txt");
+		try {
+			Files.write(file, "5000000000,-3000000000,2\n-3000000000,7\n7,5000000000,4\n"
+					.getBytes(Charset.forName("UTF-8")));
+			for (int threads = 1; threads <= 3; threads += 2) {
+				EdgeListLoader loader = new EdgeListLoader();
+				loader.setThreads(threads);
+				Graph g = loader.load(file);
+				assertEquals(g.order(), 3);
+				assertEquals(g.id(0), -3000000000L);
+				assertEquals(g.id(2), 5000000000L);
+				assertEquals(g.weight(g.ids().get(5000000000L), g.ids().get(-3000000000L)), 2);
+				assertEquals(g.weight(g.ids().get(7), g.ids().get(5000000000L)), 4);
+				assertTrue(g.isSymmetric());
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void checkStringIds() throws IOException {
+		Path file = Files.createTempFile("edges", ".txt");
+		try {
+			Files.write(file, ("# links\nhttp://b.org/x http://a.org/ 3\nhttp://a.org/\t9999999999\n"
+					+ "9999999999,http://b.org/x\n").getBytes(Charset.forName("UTF-8")));
+			for (int threads = 1; threads <= 3; threads += 2) {
+				EdgeListLoader loader = new EdgeListLoader();
+				loader.setThreads(threads);
+				loader.setStringIds(true);
+				Graph g = loader.load(file);
+				assertEquals(g.order(), 3);
+				assertEquals(g.names().id(0), "http://b.org/x"); // in order of first appearance
+				assertEquals(g.names().get("9999999999"), 2);
+				assertEquals(g.weight(0, 1), 3);
+				assertEquals(g.weight(1, 2), 1);
+				assertEquals(g.size(), 5);
+				assertTrue(g.isSymmetric());
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.github.neiljustice.louvain.clustering.LouvainDetector;
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+
+public class GraphFileTest {
+
+	private static void assertSameGraph(Graph a, Graph b) {
+		assertEquals(a.order(), b.order());
+		assertEquals(a.size(), b.size());
+		assertEquals(a.numEdges(), b.numEdges());
+		assertEquals(a.layer(), b.layer());
+		for (int n = 0; n < a.order(); n++) {
+			assertEquals(a.degree(n), b.degree(n));
+			assertEquals(a.neighbourStart(n), b.neighbourStart(n));
+			assertEquals(a.id(n), b.id(n));
+		}
+		for (int i = 0; i < a.numEdges(); i++) {
+			assertEquals(a.neighbour(i), b.neighbour(i));
+			assertEquals(a.neighbourWeight(i), b.neighbourWeight(i));
+		}
+	}
+
+	@Test
+	public void checkRoundTrip() throws Exception {
+		Path file = Files.createTempFile("graph", ".bin");
+		try {
+			String arxiv = Paths.get(getClass().getResource("/graphs/arxiv.txt").toURI()).toString();
+			GraphFile.convert(arxiv, file.toString());
+			assertSameGraph(GraphFile.read(file), new EdgeListLoader().load(arxiv));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void checkMapped() throws Exception {
+		Path file = Files.createTempFile("graph", ".bin");
+		try {
+			String arxiv = Paths.get(getClass().getResource("/graphs/arxiv.txt").toURI()).toString();
+			GraphFile.convert(arxiv, file.toString());
+			Graph mapped = GraphFile.map(file);
+			assertTrue(mapped.isOffHeap());
+			assertSameGraph(mapped, GraphFile.read(file));
+
+			LouvainDetector detector = new LouvainDetector(mapped);
+			detector.run();
+			assertTrue(detector.modularity() > 0.7);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void checkIds() throws IOException {
+		Path edges = Files.createTempFile("edges", ".txt");
+		Path file = Files.createTempFile("graph", ".bin");
+		try {
+			Files.write(edges, "-3,10,2\n10,42,1\n".getBytes(Charset.forName("UTF-8")));
+			Graph g = new EdgeListLoader().load(edges);
+			GraphFile.write(g, file);
+			Graph read = GraphFile.read(file);
+			assertSameGraph(read, g);
+			assertEquals(read.index().get(42).intValue(), 2);
+		} finally {
+			Files.delete(edges);
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void checkLongIds() throws IOException {
+		Path file = Files.createTempFile("graph", ".bin");
+		try {
+			GraphBuilder builder = new GraphBuilder(3);
+			for (long id : new long[] { 1L << 40, -(1L << 35), 7 }) {
+				builder.addNode(id);
+			}
+			builder.addEdgeSym(1L << 40, -(1L << 35), 2);
+			builder.addEdgeSym(-(1L << 35), 7, 1);
+			Graph g = builder.build();
+			GraphFile.write(g, file);
+			Graph read = GraphFile.read(file);
+			assertSameGraph(read, g);
+			assertEquals(read.id(0), 1L << 40);
+			assertEquals(read.ids().get(-(1L << 35)), 1);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void checkLarge() throws IOException {
+		Path file = Files.createTempFile("graph", ".bin");
+		try {
+			GraphBuilder builder = new GraphBuilder(3);
+			builder.setLarge(true);
+			for (int i = 0; i < 3; i++) {
+				builder.addNode(i);
+			}
+			builder.addEdgeSym(0, 1, 1 << 30);
+			builder.addEdgeSym(1, 2, 1 << 30);
+			builder.addEdgeSym(2, 2, 5);
+			Graph g = builder.build();
+			assertTrue(g.isLarge());
+			GraphFile.write(g, file);
+			for (Graph read : new Graph[] { GraphFile.read(file), GraphFile.map(file) }) {
+				assertTrue(read.isLarge());
+				assertSameGraph(read, g);
+				assertEquals(read.degree(1), 1L << 31);
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void checkVersion1() throws IOException {
+		// a path 10 - 20 - 30 with weights 2 and 3, in the layout of version 1
+		int[][] columns = {
+			{ 0, 1, 3, 4 }, // offsets
+			{ 1, 0, 2, 1 }, // targets
+			{ 2, 2, 3, 3 }, // weights
+			{ 2, 5, 3 }, // degrees
+			{ 10, 20, 30 } // ids, as ints
+		};
+		ByteBuffer buf = ByteBuffer.allocate(GraphFile.OLD_HEADER_BYTES + 4 * 18).order(ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(GraphFile.MAGIC).putInt(1).putInt(GraphFile.HAS_IDS).putInt(3).putInt(4).putInt(0).putLong(10);
+		for (int[] column : columns) {
+			for (int value : column) {
+				buf.putInt(value);
+			}
+		}
+		Path file = Files.createTempFile("graph", ".bin");
+		try {
+			Files.write(file, buf.array());
+			for (Graph g : new Graph[] { GraphFile.read(file), GraphFile.map(file) }) {
+				assertEquals(g.order(), 3);
+				assertEquals(g.numEdges(), 4);
+				assertEquals(g.size(), 5);
+				assertEquals(g.weight(1, 2), 3);
+				assertEquals(g.degree(1), 5);
+				assertEquals(g.id(2), 30);
+				assertEquals(g.ids().get(20), 1);
+				assertTrue(g.isSymmetric());
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class GraphGeneratorTest {
+
+	// modularity of the planted partition
+	private static double plantedModularity(PlantedGraph planted) {
+		Graph g = planted.graph();
+		g.loadPartitioning(planted.communities());
+		return g.partitioning().modularity();
+	}
+
+	// fraction of edge weight leaving each node's planted community
+	private static double mixing(PlantedGraph planted) {
+		Graph g = planted.graph();
+		long external = 0;
+		for (int n = 0; n < g.order(); n++) {
+			for (long i = g.neighbourStart(n); i < g.neighbourEnd(n); i++) {
+				if (planted.communities()[g.neighbour(i)] != planted.communities()[n])
+					external += g.neighbourWeight(i);
+			}
+		}
+		return (double) external / g.m2();
+	}
+
+	@Test
+	public void checkErdosRenyi() {
+		GraphGenerator generator = new GraphGenerator(3);
+		Graph g = generator.erdosRenyi(2000, 0.005).graph();
+		double expected = 2000 * 1999 / 2 * 0.005;
+		assertEquals(g.size(), expected, expected * 0.05);
+		assertTrue(g.isSymmetric());
+		assertEquals(new GraphGenerator(3).erdosRenyi(100, 1).graph().size(), 100 * 99 / 2);
+		assertEquals(new GraphGenerator(3).erdosRenyi(100, 0).graph().size(), 0);
+	}
+
+	@Test
+	public void checkSeeds() {
+		PlantedGraph one = new GraphGenerator(5).stochasticBlockModel(new int[] { 300, 200, 500 }, 0.05, 0.002);
+		GraphGenerator generator = new GraphGenerator(5);
+		generator.setThreads(4);
+		PlantedGraph four = generator.stochasticBlockModel(new int[] { 300, 200, 500 }, 0.05, 0.002);
+		assertEquals(one.graph().numEdges(), four.graph().numEdges());
+		for (int i = 0; i < one.graph().numEdges(); i++) {
+			assertEquals(one.graph().neighbour(i), four.graph().neighbour(i));
+		}
+	}
+
+	@Test
+	public void checkStochasticBlockModel() {
+		PlantedGraph planted = new GraphGenerator(7).stochasticBlockModel(new int[] { 250, 250, 250, 250 }, 0.1,
+				0.002);
+		assertEquals(planted.numCommunities(), 4);
+		assertEquals(planted.communities()[999], 3);
+		// expected external fraction: 0.002 * 750 / (0.1 * 249 + 0.002 * 750)
+		assertEquals(mixing(planted), 0.057, 0.02);
+		assertTrue(plantedModularity(planted) > 0.6);
+	}
+
+	@Test
+	public void checkLfr() {
+		GraphGenerator generator = new GraphGenerator(11);
+		generator.setThreads(2);
+		PlantedGraph planted = generator.lfr(2000, 15, 50, 2, 20, 100, 1, 0.2);
+		Graph g = planted.graph();
+		assertEquals(g.order(), 2000);
+		assertEquals(g.m2() / g.order(), 15, 2);
+		assertEquals(mixing(planted), 0.2, 0.05);
+		assertTrue(plantedModularity(planted) > 0.5);
+		assertTrue(g.isSymmetric());
+	}
+}
@@ -32,6 +32,8 @@ import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.*;
+
 public class GraphTest {
 	private static Graph g;
 
@@ -66,6 +68,19 @@ public class GraphTest {
 		assertEquals(g.weight(0, 1), g.weight(1, 0));
 	}
 
+	@Test
+	public void checkNeighbours() {
+		assertEquals(g.numNeighbours(4), 3);
+		long sum = 0;
+		for (long i = g.neighbourStart(4); i < g.neighbourEnd(4); i++) {
+			sum += g.neighbourWeight(i);
+		}
+		assertEquals(sum, g.degree(4));
+		assertEquals(g.weight(4, 4), 10);
+		assertEquals(g.weight(0, 6), 0);
+		assertTrue(g.isSymmetric());
+	}
+
 	@Test
 	public void checkDnodecomm() {
 		assertEquals(g.partitioning().dnodecomm(6, 3), 28);
@@ -88,6 +103,50 @@ public class GraphTest {
 		assertEquals(g.partitioning().numComms(), 3);
 	}
 
+	@Test
+	public void checkModularity() {
+		assertEquals(g.partitioning().modularity(), g.partitioning().recomputeModularity(), 1e-12);
+	}
+
+	@Test
+	public void checkLoadPartitioning() {
+		Graph loaded = new GraphBuilder(0).update(g, new EdgeBatch());
+		loaded.loadPartitioning(g.partitioning().communities().clone());
+		assertEquals(loaded.partitioning().numComms(), 3);
+		assertEquals(loaded.partitioning().intDegree(0), 62);
+		assertEquals(loaded.partitioning().totDegree(3), g.partitioning().totDegree(3));
+		assertEquals(loaded.partitioning().modularity(), g.partitioning().modularity(), 1e-12);
+	}
+
+	@Test
+	public void checkSettle() {
+		// the same moves as init(), made concurrently, including a self-edge and
+		// edges between two moved nodes
+		Graph.Partitioning p = g.newPartitioning();
+		int[] moved = {1, 2, 4, 5};
+		int[] previous = {1, 2, 4, 5};
+		p.moveToCommConcurrent(1, 0);
+		p.moveToCommConcurrent(2, 0);
+		p.moveToCommConcurrent(4, 3);
+		p.moveToCommConcurrent(5, 3);
+		p.settle(moved, previous, moved.length, null, 1);
+		assertEquals(p.numComms(), 3);
+		assertEquals(p.intDegree(0), 62);
+		assertEquals(p.intDegree(3), 50);
+		assertEquals(p.intDegree(4), 0);
+		assertEquals(p.modularity(), g.partitioning().modularity(), 1e-12);
+
+		// and back again
+		int[] back = {0, 0, 3, 3};
+		for (int i = 0; i < moved.length; i++) {
+			p.moveToCommConcurrent(moved[i], previous[i]);
+		}
+		p.settle(moved, back, moved.length, null, 1);
+		assertEquals(p.numComms(), 7);
+		assertEquals(p.intDegree(4), 10);
+		assertEquals(p.modularity(), g.newPartitioning().modularity(), 1e-12);
+	}
+
 	@Test
 	public void checkCommWeights() {
 		assertEquals(g.partitioning().communityWeight(0, 0), 62);
@@ -96,4 +155,175 @@ public class GraphTest {
 		assertEquals(g.partitioning().communityWeight(3, 3), 50);
 		assertEquals(g.partitioning().communityWeight(6, 6), 0);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void checkCoarseGrain() {
+		int[] commToNode = new int[g.order()];
+		commToNode[3] = 1;
+		commToNode[6] = 2;
+		GraphBuilder builder = new GraphBuilder(0);
+		builder.setValidate(true);
+		builder.setThreads(2);
+		Graph coarse = builder.coarseGrain(g, commToNode, 3);
+
+		assertEquals(coarse.order(), 3);
+		assertEquals(coarse.layer(), 1);
+		assertEquals(coarse.size(), g.size());
+		assertEquals(coarse.weight(0, 0), 62);
+		assertEquals(coarse.weight(1, 1), 50);
+		assertEquals(coarse.weight(1, 2), 28);
+		assertEquals(coarse.weight(0, 1), 0);
+		assertEquals(coarse.degree(1), g.partitioning().totDegree(3));
+
+		// an odd self-edge weight leaves the total degree odd
+		GraphBuilder odd = new GraphBuilder(2);
+		odd.addNode(0);
+		odd.addNode(1);
+		odd.addEdgeSym(0, 0, 3);
+		odd.addEdgeSym(0, 1, 2);
+		Graph fine = odd.build();
+		Graph merged = builder.coarseGrain(fine, new int[] { 0, 0 }, 1);
+		assertEquals(merged.degree(0), 7);
+	}
+
+	@Test
+	public void checkOffHeap() {
+		GraphBuilder builder = new GraphBuilder(4);
+		builder.setOffHeap(true);
+		for (int i = 0; i < 4; ++i) {
+			builder.addNode(i);
+		}
+		builder.addEdgeSym(2, 0, 3);
+		builder.addEdgeSym(0, 1, 1);
+		builder.addEdgeSym(0, 2, 5); // replaces the first weight
+		builder.addEdgeSym(3, 3, 2);
+		Graph off = builder.build();
+
+		assertTrue(off.isOffHeap());
+		assertEquals(off.numEdges(), 5);
+		assertEquals(off.neighbour(off.neighbourStart(0)), 1);
+		assertEquals(off.weight(0, 2), 5);
+		assertEquals(off.weight(2, 0), 5);
+		assertEquals(off.degree(0), 6);
+		assertEquals(off.size(), 7);
+		assertTrue(off.isSymmetric());
+
+		GraphBuilder coarseBuilder = new GraphBuilder(0);
+		coarseBuilder.setOffHeap(true);
+		coarseBuilder.setValidate(true);
+		Graph coarse = coarseBuilder.coarseGrain(off.newPartitioning(new int[] { 0, 0, 0, 3 }), new int[] { 0, 0, 0, 1 }, 2);
+		assertTrue(coarse.isOffHeap());
+		assertEquals(coarse.weight(0, 0), 12);
+		assertEquals(coarse.weight(1, 1), 2);
+
+		// enough edges to grow the off-heap edge buffers
+		GraphBuilder ringBuilder = new GraphBuilder(0);
+		ringBuilder.setOffHeap(true);
+		for (int i = 0; i < 20; ++i) {
+			ringBuilder.addNode(i);
+		}
+		for (int i = 0; i < 20; ++i) {
+			ringBuilder.addEdgeSym(i, (i + 1) % 20, i + 1);
+		}
+		Graph ring = ringBuilder.build();
+		assertTrue(ring.isOffHeap());
+		assertEquals(ring.numEdges(), 40);
+		assertEquals(ring.weight(19, 0), 20);
+		assertEquals(ring.degree(0), 21);
+		assertTrue(ring.isSymmetric());
+	}
+
+	@Test
+	public void checkLargeWeights() {
+		int w = 1 << 30;
+		GraphBuilder builder = new GraphBuilder(5);
+		for (int i = 0; i < 5; ++i) {
+			builder.addNode(i);
+		}
+		builder.addEdgeSym(0, 1, w);
+		builder.addEdgeSym(1, 2, w);
+		builder.addEdgeSym(0, 2, w);
+		builder.addEdgeSym(3, 4, w);
+		Graph large = builder.build();
+		large.partitioning().moveToComm(1, 0);
+		large.partitioning().moveToComm(2, 0);
+		large.partitioning().moveToComm(4, 3);
+
+		assertTrue(large.isLarge());
+		assertFalse(g.isLarge());
+		assertEquals(large.size(), 4L * w);
+		assertEquals(large.partitioning().intDegree(0), 6L * w);
+		assertEquals(large.partitioning().modularity(), large.partitioning().recomputeModularity(), 1e-12);
+
+		int[] commToNode = new int[large.order()];
+		commToNode[3] = 1;
+		Graph coarse = new GraphBuilder(0).coarseGrain(large, commToNode, 2);
+		assertTrue(coarse.isLarge());
+		assertEquals(coarse.weight(0, 0), 6L * w);
+		assertEquals(coarse.degree(0), 6L * w);
+	}
+
+	@Test
+	public void checkUpdate() {
+		EdgeBatch batch = new EdgeBatch();
+		batch.insert(0, 6, 3);
+		batch.insert(4, 4, 7);
+		batch.delete(0, 1);
+		batch.insert(0, 100, 2);
+		batch.insert(2, 100, 1);
+		batch.delete(2, 100);
+		Graph updated = new GraphBuilder(0).update(g, batch);
+
+		assertEquals(updated.order(), 8);
+		assertEquals(updated.index().get(100).intValue(), 7);
+		assertEquals(updated.weight(6, 0), 3);
+		assertEquals(updated.weight(4, 4), 7);
+		assertEquals(updated.weight(0, 1), 0);
+		assertEquals(updated.weight(7, 0), 2);
+		assertEquals(updated.weight(2, 7), 0);
+		assertEquals(updated.degree(4), g.degree(4) - 3);
+		assertEquals(updated.size(), (168 + 6 - 3 - 24 + 4) / 2);
+		assertTrue(updated.isSymmetric());
+
+		GraphBuilder offHeap = new GraphBuilder(0);
+		offHeap.setOffHeap(true);
+		Graph off = offHeap.update(g, batch);
+		assertTrue(off.isOffHeap());
+		assertEquals(off.numEdges(), updated.numEdges());
+		for (int i = 0; i < updated.numEdges(); i++) {
+			assertEquals(off.neighbour(i), updated.neighbour(i));
+			assertEquals(off.neighbourWeight(i), updated.neighbourWeight(i));
+		}
+
+		// a partitioning carried over matches one loaded from scratch
+		Graph.Partitioning before = g.newPartitioning(new int[] { 0, 0, 0, 3, 3, 3, 0 });
+		Graph.Partitioning carried = updated.newPartitioning(before, new int[] { 0, 6, 4, 1, 7, 2 });
+		Graph.Partitioning loaded = updated.newPartitioning(new int[] { 0, 0, 0, 3, 3, 3, 0, 7 });
+		assertEquals(carried.numComms(), loaded.numComms());
+		assertEquals(carried.modularity(), loaded.modularity(), 1e-12);
+		for (int comm = 0; comm < updated.order(); comm++) {
+			assertEquals(carried.totDegree(comm), loaded.totDegree(comm));
+			assertEquals(carried.intDegree(comm), loaded.intDegree(comm));
+		}
+
+		// a graph without ids: its nodes are their own ids
+		Graph sub = new GraphBuilder(0).fromCommunity(g, new ArrayList<Integer>(Arrays.asList(0, 1, 2)));
+		assertEquals(sub.ids().size(), 0);
+		EdgeBatch subBatch = new EdgeBatch();
+		subBatch.insert(0, 2, 4);
+		subBatch.delete(1, 2);
+		Graph subUpdated = new GraphBuilder(0).update(sub, subBatch);
+		assertEquals(subUpdated.order(), 3);
+		assertEquals(subUpdated.weight(0, 2), 4);
+		assertEquals(subUpdated.weight(1, 2), 0);
+		assertEquals(subUpdated.node(2), 2);
+
+		subBatch.insert(2, 9, 1);
+		subUpdated = new GraphBuilder(0).update(sub, subBatch);
+		assertEquals(subUpdated.order(), 4);
+		assertEquals(subUpdated.node(9), 3);
+		assertEquals(subUpdated.id(3), 9);
+		assertEquals(subUpdated.node(1), 1);
+		assertEquals(subUpdated.weight(2, 3), 1);
+	}
+}
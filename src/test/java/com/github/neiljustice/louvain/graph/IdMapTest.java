@@ -0,0 +1,101 @@
+/* MIT License
+
+Copyright (c) 2018 Neil Justice
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE. */
+
+package com.github.neiljustice.louvain.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class IdMapTest {
+
+	@Test
+	public void checkLongIds() {
+		LongIdMap ids = new LongIdMap();
+		Random rnd = new Random(1);
+		long[] added = new long[100000];
+		for (int i = 0; i < added.length; i++) {
+			added[i] = i % 3 == 0 ? i : rnd.nextLong();
+			assertEquals(ids.add(added[i]), i);
+		}
+		assertEquals(ids.size(), added.length);
+		for (int i = 0; i < added.length; i++) {
+			assertEquals(ids.get(added[i]), i);
+			assertEquals(ids.add(added[i]), i);
+			assertEquals(ids.id(i), added[i]);
+		}
+		assertEquals(ids.get(-1L), -1);
+		assertEquals(ids.copy().get(added[42]), 42);
+	}
+
+	@Test
+	public void checkStringIds() {
+		StringIdMap names = new StringIdMap();
+		for (int i = 0; i < 50000; i++) {
+			assertEquals(names.add("https://example.org/user/" + i), i);
+		}
+		assertEquals(names.add("\u00e9t\u00e9"), 50000);
+		assertEquals(names.size(), 50001);
+		for (int i = 0; i < 50000; i += 7) {
+			String name = "https://example.org/user/" + i;
+			assertEquals(names.get(name), i);
+			assertEquals(names.id(i), name);
+			byte[] bytes = ("  " + name).getBytes(StandardCharsets.UTF_8);
+			assertEquals(names.add(bytes, 2, bytes.length - 2), i);
+		}
+		assertEquals(names.id(50000), "\u00e9t\u00e9");
+		assertEquals(names.get("https://example.org/user/"), -1);
+		assertEquals(names.copy().get("https://example.org/user/9"), 9);
+	}
+
+	@Test
+	public void checkBuilderIds() {
+		GraphBuilder builder = new GraphBuilder(4);
+		long big = 1L << 40;
+		for (long id : new long[] { big, -3, big + 1, 7 }) {
+			builder.addNode(id);
+		}
+		builder.addEdgeSym(big, -3, 2);
+		builder.addEdgeSym(big + 1, 7, 1);
+		Graph g = builder.build();
+		assertEquals(g.id(0), big);
+		assertEquals(g.weight(g.ids().get(big), g.ids().get(-3)), 2);
+		assertEquals(g.ids().get(big + 1), 2);
+
+		builder = new GraphBuilder(3);
+		builder.addNode("a");
+		builder.addNode("b");
+		builder.addNode("a");
+		builder.addEdgeSym("a", "b", 3);
+		g = builder.build();
+		assertEquals(g.order(), 2);
+		assertEquals(g.weight(g.names().get("a"), g.names().get("b")), 3);
+	}
+}